@@ -0,0 +1,62 @@
+package org.concordion.ext.loggingFormatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of converting a text log file for the log file viewer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogContentBenchmark {
+	private static final String[] LEVELS = { "TRACE", "DEBUG", "INFO ", "WARN ", "ERROR" };
+
+	@Param({ "100", "10000" })
+	public int lines;
+
+	private File logFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		logFile = File.createTempFile("LogContentBenchmark", ".log");
+
+		PrintWriter writer = new PrintWriter(logFile, "UTF-8");
+
+		try {
+			for (int i = 0; i < lines; i++) {
+				writer.printf("17-10-2016 10:15:%02d.%03d %s c.e.SomeFixture - Entered <value> number %d into field%n", i % 60, i % 1000, LEVELS[i % LEVELS.length], i);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		logFile.delete();
+	}
+
+	@Benchmark
+	public String getLogContent() {
+		return LoggingFormatterSpecificationListener.getLogContent(logFile);
+	}
+}
@@ -0,0 +1,86 @@
+package org.concordion.logback.filter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Cost of MarkerFilter.decide(), which every registered LoggingListener runs for every event in the JVM.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MarkerFilterBenchmark {
+	private static final String[] FILTER_MARKERS = { "STORYBOARD", "SCREENSHOT", "EXAMPLE", "STEP" };
+
+	/** Number of nested markers, 0 for an event without a marker */
+	@Param({ "0", "1", "4" })
+	public int markerDepth;
+
+	/** Whether the innermost marker is one the filter is looking for */
+	@Param({ "true", "false" })
+	public boolean match;
+
+	private MarkerFilter filter;
+	private LoggingEvent event;
+
+	@Setup
+	public void setUp() {
+		LoggerContext context = new LoggerContext();
+
+		filter = new MarkerFilter();
+		filter.setContext(context);
+		filter.setMarkers(FILTER_MARKERS);
+		filter.setOnMatch(FilterReply.ACCEPT);
+		filter.setOnMismatch(FilterReply.DENY);
+		filter.start();
+
+		event = new LoggingEvent(MarkerFilterBenchmark.class.getName(), context.getLogger(MarkerFilterBenchmark.class), Level.INFO, "message", null, null);
+		event.setMarker(createMarker(markerDepth, match));
+	}
+
+	@Benchmark
+	public FilterReply decide() {
+		return filter.decide(event);
+	}
+
+	private static Marker createMarker(int depth, boolean match) {
+		Marker root = null;
+		Marker parent = null;
+
+		for (int i = 1; i <= depth; i++) {
+			String name = (i == depth && match) ? FILTER_MARKERS[FILTER_MARKERS.length - 1] : "LEVEL_" + i;
+			Marker marker = MarkerFactory.getDetachedMarker(name);
+
+			if (parent == null) {
+				root = marker;
+			} else {
+				parent.add(marker);
+			}
+
+			parent = marker;
+		}
+
+		return root;
+	}
+}
@@ -0,0 +1,86 @@
+package org.concordion.logback.html;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Cost of rendering a single row of the HTML log, both to a String (LayoutWrappingEncoder) and to bytes (HTMLEncoder).
+ * 
+ * <p>The jmh task runs with the gc profiler, gc.alloc.rate.norm shows the bytes allocated per row which for doLayout should
+ * be little more than the returned String.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HTMLLayoutBenchmark {
+	@Param({ "10", "200", "5000" })
+	public int messageSize;
+
+	@Param({ "%message", "%level%message%date{HH:mm:ss.SSS}%file%line", "%date%level%thread%logger{36}%message" })
+	public String pattern;
+
+	private HTMLLayout layout;
+	private HTMLEncoder encoder;
+	private LoggingEvent event;
+
+	@Setup
+	public void setUp() {
+		LoggerContext context = new LoggerContext();
+
+		layout = new HTMLLayout();
+		layout.setContext(context);
+		layout.setPattern(pattern);
+		layout.start();
+
+		encoder = new HTMLEncoder();
+		encoder.setContext(context);
+		encoder.setLayout(layout);
+		encoder.start();
+
+		event = new LoggingEvent(HTMLLayoutBenchmark.class.getName(), context.getLogger(HTMLLayoutBenchmark.class), Level.INFO, message(messageSize), null, null);
+
+		// Calculated once per event in real use, so don't measure it on every iteration
+		event.getCallerData();
+	}
+
+	@Benchmark
+	public String doLayout() {
+		return layout.doLayout(event);
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return encoder.encode(event);
+	}
+
+	private static String message(int size) {
+		String text = "Clicked <button> 'Log In' & waited\tfor page\n";
+		StringBuilder sb = new StringBuilder(size);
+
+		while (sb.length() < size) {
+			sb.append(text);
+		}
+
+		sb.setLength(size);
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,62 @@
+package org.concordion.logback.html;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Cost of rendering a stack trace, which includes one cause, into the HTML log.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HTMLThrowableRendererBenchmark {
+	@Param({ "1", "20", "100" })
+	public int throwableDepth;
+
+	private final StringBuilder buf = new StringBuilder(16 * 1024);
+	private HTMLThrowableRenderer renderer;
+	private LoggingEvent event;
+
+	@Setup
+	public void setUp() {
+		LoggerContext context = new LoggerContext();
+		Throwable throwable = new RuntimeException("Unable to complete <step>", createException(throwableDepth));
+
+		renderer = new HTMLThrowableRenderer();
+		event = new LoggingEvent(HTMLThrowableRendererBenchmark.class.getName(), context.getLogger(HTMLThrowableRendererBenchmark.class), Level.ERROR, "Failed", throwable, null);
+	}
+
+	@Benchmark
+	public int render() {
+		buf.setLength(0);
+		renderer.render(buf, event);
+
+		return buf.length();
+	}
+
+	private static Exception createException(int depth) {
+		if (depth <= 1) {
+			return new IllegalStateException("Expected \"value\" but was <null>\nat line 2");
+		}
+
+		return createException(depth - 1);
+	}
+}
@@ -0,0 +1,116 @@
+package org.concordion.slf4j.ext;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Cost of a FluentLogger chain up to the point the event is handed to an appender, the appender does nothing so
+ * that only the logging overhead is measured.  Run with -Pjmh.threads to see the effect of contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FluentLoggerBenchmark {
+	/** Number of nested markers added to each entry */
+	@Param({ "0", "1", "4" })
+	public int markerDepth;
+
+	@Param({ "true", "false" })
+	public boolean enabled;
+
+	private LoggerContext context;
+	private Logger logger;
+	private Marker marker;
+
+	@Setup
+	public void setUp() {
+		context = new LoggerContext();
+
+		NopAppender appender = new NopAppender();
+		appender.setContext(context);
+		appender.start();
+
+		logger = context.getLogger(FluentLoggerBenchmark.class);
+		logger.setAdditive(false);
+		logger.setLevel(enabled ? Level.ALL : Level.WARN);
+		logger.addAppender(appender);
+
+		marker = createMarker(markerDepth);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.stop();
+	}
+
+	@Benchmark
+	public void message() {
+		withMarker(new FluentLogger(logger, true).message("Entered {} into {}", "value", "field")).info();
+	}
+
+	@Benchmark
+	public void htmlMessage() {
+		withMarker(new FluentLogger(logger, true).htmlMessage("Entered <b>{}</b> into <i>{}</i>", "value", "field")).info();
+	}
+
+	@Benchmark
+	public void data() {
+		withMarker(new FluentLogger(logger, true).message("Response").data("{\"field\": \"{}\"}", "value")).info();
+	}
+
+	private FluentLogger withMarker(FluentLogger fluentLogger) {
+		if (marker != null) {
+			fluentLogger.marker(marker);
+		}
+
+		return fluentLogger;
+	}
+
+	private static Marker createMarker(int depth) {
+		Marker root = null;
+		Marker parent = null;
+
+		for (int i = 1; i <= depth; i++) {
+			Marker child = MarkerFactory.getDetachedMarker("LEVEL_" + i);
+
+			if (parent == null) {
+				root = child;
+			} else {
+				parent.add(child);
+			}
+
+			parent = child;
+		}
+
+		return root;
+	}
+
+	private static class NopAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+		@Override
+		protected void append(ILoggingEvent event) {
+		}
+	}
+}
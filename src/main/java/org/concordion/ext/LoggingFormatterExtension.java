@@ -3,17 +3,19 @@ package org.concordion.ext;
 
 import org.concordion.api.extension.ConcordionExtender;
 import org.concordion.api.extension.ConcordionExtension;
+import org.concordion.ext.loggingFormatter.FailureScreenshotPolicy;
 import org.concordion.ext.loggingFormatter.LoggingFormatterSpecificationListener;
 import org.concordion.logback.LogbackAdaptor;
 import org.concordion.logback.LoggingListener;
-import org.concordion.logback.filter.MarkerFilter;
+import org.concordion.logback.LoggingListenerDispatcher;
 import org.concordion.slf4j.ILoggingAdaptor;
+import org.concordion.slf4j.markers.ContentStore;
+import org.concordion.slf4j.markers.ScreenshotMarker;
+import org.concordion.slf4j.markers.Thumbnails;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
-import ch.qos.logback.core.spi.FilterAttachable;
-import ch.qos.logback.core.spi.FilterReply;
 
 /**
  * Formats the footer of the Concordion specification to show a link to the log file that has been created for this test.<br><br>
@@ -68,11 +70,101 @@ public class LoggingFormatterExtension implements ConcordionExtension {
 		return this;
 	}
 	
+	/**
+	 * If set to true screenshots and attachments are stored once per unique content, in the "artifacts" folder of the output 
+	 * folder, rather than written to a new file alongside the log file every time they are logged.  This applies to all tests.
+	 *  
+	 * @param deduplicate Value to set
+	 * @return A self reference
+	 */
+	public LoggingFormatterExtension setDeduplicateArtifacts(boolean deduplicate) {
+		ContentStore.setEnabled(deduplicate);
+		return this;
+	}
+	
+	/**
+	 * If set to true the HTML log shows downscaled copies of screenshots, created in the background, and only loads the full
+	 * size screenshot when it is clicked on.  This applies to all tests.
+	 *  
+	 * @param thumbnails Value to set
+	 * @return A self reference
+	 */
+	public LoggingFormatterExtension setScreenshotThumbnails(boolean thumbnails) {
+		Thumbnails.setEnabled(thumbnails);
+		return this;
+	}
+	
+	/**
+	 * If set to true a screenshot that is identical to the previous screenshot in the same log file, eg when retrying or 
+	 * polling, is not written again and the log shows the earlier screenshot.  This applies to all tests.
+	 * 
+	 * <p>Comparing screenshots means encoding them as they are taken, so a RawScreenshotTaker's screenshots are no longer
+	 * encoded in the background.</p>
+	 *  
+	 * @param skipUnchanged Value to set
+	 * @return A self reference
+	 */
+	public LoggingFormatterExtension setSkipUnchangedScreenshots(boolean skipUnchanged) {
+		ScreenshotMarker.setSkipUnchanged(skipUnchanged);
+		return this;
+	}
+	
+	/**
+	 * Sets when a failed assertion or exception takes a new screenshot rather than show the screenshot taken for an earlier
+	 * failure, saving time when many failures are reported in a row, eg in a table of failing rows.
+	 *  
+	 * @param policy Policy to use, defaults to EVERY_FAILURE
+	 * @return A self reference
+	 */
+	public LoggingFormatterExtension setFailureScreenshotPolicy(FailureScreenshotPolicy policy) {
+		listener.setFailureScreenshotPolicy(policy);
+		return this;
+	}
+	
+	/**
+	 * @param milliseconds How long a failure screenshot is shared for with the TIME_WINDOW failure screenshot policy, defaults to 5 seconds
+	 * @return A self reference
+	 */
+	public LoggingFormatterExtension setFailureScreenshotWindow(long milliseconds) {
+		listener.setFailureScreenshotWindow(milliseconds);
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum time to wait for a screenshot so that a hung browser can't stall the test, if the screenshot takes longer
+	 * the log records that the screenshot timed out and the test continues.  This applies to all tests.
+	 * 
+	 * <p>With a timeout the screenshot taker is called from another thread.  The thread has the test's logging context, but
+	 * not the test thread's other thread locals, so a taker must hold on to its WebDriver rather than look up a per thread
+	 * driver when called.</p>
+	 * 
+	 * <p>The number of screenshots that timed out is available from ScreenshotMarker.getTimedOutCaptureCount().</p>
+	 *  
+	 * @param milliseconds Timeout, 0 (the default) to wait for as long as it takes
+	 * @return A self reference
+	 */
+	public LoggingFormatterExtension setScreenshotTimeout(long milliseconds) {
+		ScreenshotMarker.setCaptureTimeout(milliseconds);
+		return this;
+	}
+	
+	/**
+	 * Sets the compression quality used when encoding screenshots taken by a {@link RawScreenshotTaker}, these are encoded and
+	 * written on a background thread so the test doesn't wait for them.  This applies to all tests.
+	 * 
+	 * @param quality Between 0 and 1, or a negative value (the default) to use the image format's default compression
+	 * @return A self reference
+	 */
+	public LoggingFormatterExtension setScreenshotQuality(float quality) {
+		ScreenshotMarker.setEncodingQuality(quality);
+		return this;
+	}
+	
 	/**
 	 * Registers listeners for other extensions to listen in on log messages.
 	 *  
 	 * <p>NOTE: In order to correctly filter out log messages from other tests that might be running 
-	 * in parallel it automatically filters out log messages not originating from the current thread.</p>
+	 * in parallel the listener only receives log messages logged while this extension's specification is running.</p>
 	 *  
 	 * @param logListener Log listener to register
 	 * @return A self reference
@@ -84,23 +176,16 @@ public class LoggingFormatterExtension implements ConcordionExtension {
 			listener.setHandleFailureAndThrowableEvents(false);
 		}
 
-		if (logListener instanceof FilterAttachable<?>) {
-			MarkerFilter filter = new MarkerFilter();
-			
-			filter.setThread(Thread.currentThread().getName());
-
-			filter.setMarkers(logListener.getFilterMarkers());
-			filter.setOnMismatch(FilterReply.DENY);
-
-			filter.start();
-			
-			logListener.addFilter(filter);
+		if (!logListener.isStarted()) {
+			logListener.start();
 		}
 
-		logListener.start();
+		// Ensure the dispatcher is attached to the root logger, it only passes on events that carry the listener's filter
+		// markers and were logged by this extension's specification
+		LoggingListenerDispatcher.getInstance();
+		listener.registerLogListener(logListener);
 
 		Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
-		logger.addAppender(logListener);
 		logger.setLevel(Level.ALL);
 		logger.setAdditive(true);
 
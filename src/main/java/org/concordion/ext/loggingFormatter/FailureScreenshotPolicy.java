@@ -0,0 +1,22 @@
+package org.concordion.ext.loggingFormatter;
+
+/**
+ * When to take a new screenshot for a failed assertion or exception, rather than show the screenshot taken for an
+ * earlier failure in the same log file.
+ */
+public enum FailureScreenshotPolicy {
+	/** Take a screenshot for every failure, the default. */
+	EVERY_FAILURE,
+
+	/** Take one screenshot per example, or per specification for failures outside of an example. */
+	ONCE_PER_EXAMPLE,
+
+	/** Take a new screenshot only once the failure screenshot window has passed since the last one. */
+	TIME_WINDOW,
+
+	/**
+	 * Take a new screenshot only if the test has logged a step since the last one.  A step is an event logged with the
+	 * STEP marker, eg by ReportLogger.step(), whatever the HTMLLayout's stepRecorder is set to.
+	 */
+	UNLESS_NEW_STEP;
+}
@@ -0,0 +1,76 @@
+package org.concordion.ext.loggingFormatter;
+
+import org.concordion.ext.ScreenshotTaker;
+import org.concordion.logback.LogbackAdaptor;
+import org.concordion.logback.LoggingListener;
+import org.concordion.slf4j.markers.ScreenshotMarker;
+import org.slf4j.MDC;
+
+/**
+ * Hands out the screenshot for a failure, sharing the screenshot between failures as allowed by the {@link FailureScreenshotPolicy}.
+ * A shared screenshot is only taken once, by the first failure, and later failures link to the same image.
+ */
+class FailureScreenshots {
+	private final StepCounter steps = new StepCounter();
+	private FailureScreenshotPolicy policy = FailureScreenshotPolicy.EVERY_FAILURE;
+	private long window = 5000;
+
+	private ScreenshotMarker last = null;
+	private String lastLogFile = null;
+	private long lastTime = 0;
+	private long lastStepCount = 0;
+
+	public synchronized void setPolicy(FailureScreenshotPolicy policy) {
+		this.policy = policy;
+	}
+
+	public synchronized void setWindow(long milliseconds) {
+		this.window = milliseconds;
+	}
+
+	/**
+	 * @return Listener that counts the steps logged by each test, to add to the running specification's listeners, or null
+	 * if the policy doesn't need steps counted
+	 */
+	public synchronized LoggingListener getStepCounter() {
+		return policy == FailureScreenshotPolicy.UNLESS_NEW_STEP ? steps : null;
+	}
+
+	public synchronized ScreenshotMarker getScreenshot(String logFile, ScreenshotTaker screenshotTaker) {
+		long now = System.currentTimeMillis();
+		long stepCount = steps.getCount(MDC.get(LogbackAdaptor.TEST_NAME));
+
+		if (last != null && logFile.equals(lastLogFile) && canReuse(now, stepCount)) {
+			return last;
+		}
+
+		last = new ScreenshotMarker(logFile, screenshotTaker);
+		lastLogFile = logFile;
+		lastTime = now;
+		lastStepCount = stepCount;
+
+		return last;
+	}
+
+	private boolean canReuse(long now, long stepCount) {
+		switch (policy) {
+		case ONCE_PER_EXAMPLE:
+			return true;
+
+		case TIME_WINDOW:
+			return now - lastTime < window;
+
+		case UNLESS_NEW_STEP:
+			return stepCount == lastStepCount;
+
+		default:
+			return false;
+		}
+	}
+
+	public synchronized void reset() {
+		last = null;
+		lastLogFile = null;
+		steps.forget(MDC.get(LogbackAdaptor.TEST_NAME));
+	}
+}
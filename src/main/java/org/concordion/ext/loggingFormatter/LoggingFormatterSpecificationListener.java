@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 
 import org.apache.commons.io.FileUtils;
@@ -24,6 +25,8 @@ import org.concordion.api.listener.SpecificationProcessingListener;
 import org.concordion.api.listener.ThrowableCaughtEvent;
 import org.concordion.api.listener.ThrowableCaughtListener;
 import org.concordion.ext.ScreenshotTaker;
+import org.concordion.logback.LoggingListener;
+import org.concordion.logback.LoggingListenerDispatcher;
 import org.concordion.slf4j.ILoggingAdaptor;
 import org.concordion.slf4j.ext.FluentLogger;
 import org.concordion.slf4j.ext.ReportLogger;
@@ -38,6 +41,10 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 	private String testPath = "";
 			
 	private List<Marker> markers = new ArrayList<Marker>();
+	private final List<LoggingListener> logListeners = new CopyOnWriteArrayList<LoggingListener>();
+	private String listenerScope = null;
+	private String previousListenerScope = null;
+	private final FailureScreenshots failureScreenshots = new FailureScreenshots();
 
 	public void setUseLogFileViewer(boolean useLogFileViewer) {
 		this.useLogFileViewer = useLogFileViewer;
@@ -47,6 +54,14 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 		this.handleFailureAndThrowableEvents = handleFailureAndThrowableEvents;
 	}
 	
+	public void setFailureScreenshotPolicy(FailureScreenshotPolicy policy) {
+		failureScreenshots.setPolicy(policy);
+	}
+
+	public void setFailureScreenshotWindow(long milliseconds) {
+		failureScreenshots.setWindow(milliseconds);
+	}
+
 	public void setScreenshotTaker(ScreenshotTaker screenshotTaker) {
 		FluentLogger.addScreenshotTaker(screenshotTaker);
 	}
@@ -61,6 +76,24 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 		}
 	}
 
+	/**
+	 * Registers a listener that will receive the log events of this specification. If a specification is already running 
+	 * on this thread, eg the fixture is created per example, the listener also receives the events of that specification.
+	 * 
+	 * @param logListener Listener to register
+	 */
+	public void registerLogListener(LoggingListener logListener) {
+		if (!logListeners.contains(logListener)) {
+			logListeners.add(logListener);
+		}
+
+		String scope = LoggingListenerDispatcher.getCurrentScope();
+		
+		if (scope != null) {
+			LoggingListenerDispatcher.getInstance().addListener(logListener, scope);
+		}
+	}
+
 	public LoggingFormatterSpecificationListener(ILoggingAdaptor loggingAdaptor) {
 		this.loggingAdaptor = loggingAdaptor;
 		
@@ -73,16 +106,35 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 		testPath = event.getResource().getPath();
 
 		loggingAdaptor.startSpecificationLogFile(testPath);
+		
+		// Listeners only receive events logged while this specification is running, whichever thread they were registered on
+		listenerScope = LoggingListenerDispatcher.newScope();
+		previousListenerScope = LoggingListenerDispatcher.enterScope(listenerScope);
+
+		LoggingListenerDispatcher dispatcher = LoggingListenerDispatcher.getInstance();
+		for (LoggingListener logListener : logListeners) {
+			dispatcher.addListener(logListener, listenerScope);
+		}
+		
+		LoggingListener stepCounter = failureScreenshots.getStepCounter();
+		
+		if (stepCounter != null) {
+			dispatcher.addListener(stepCounter, listenerScope);
+		}
 	}
 
 	@Override
 	public void afterProcessingSpecification(final SpecificationProcessingEvent event) {
 		try {
-            File logFile = loggingAdaptor.getLogFile();
-            if (logFile.exists()) {
-                appendLogFileLinkToFooter(event, logFile);
+            if (loggingAdaptor.logFileExists()) {
+                appendLogFileLinkToFooter(event, loggingAdaptor.getLogFile());
             }
 		} finally {
+			LoggingListenerDispatcher.getInstance().removeScope(listenerScope);
+			LoggingListenerDispatcher.exitScope(previousListenerScope);
+			listenerScope = null;
+			failureScreenshots.reset();
+			
 			loggingAdaptor.stopLogFile();
 			FluentLogger.removeLoggingAdaptor();
 			FluentLogger.removeScreenshotTaker();
@@ -150,7 +202,7 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 		return logName;
 	}
 	
-	private String getLogContent(File logFile) {
+	static String getLogContent(File logFile) {
 		
 		StringBuilder logContent = new StringBuilder();
 		BufferedReader br = null;
@@ -217,11 +269,11 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 	@Override
 	public void afterExample(ExampleEvent event) {
 		try {
-            File logFile = loggingAdaptor.getLogFile();
-            if (logFile.exists()) {
-                appendLogFileLinkToExample(event, logFile);
+            if (loggingAdaptor.logFileExists()) {
+                appendLogFileLinkToExample(event, loggingAdaptor.getLogFile());
 			}
 		} finally  {
+			failureScreenshots.reset();
 			loggingAdaptor.stopLogFile();		
 		}
 	}
@@ -250,9 +302,7 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 		FluentLogger logger = LOGGER.with()
 				.message("Exception thrown while evaluating expression '{}':\r\n\t{}", event.getExpression(), cause.getMessage());
 
-		if (FluentLogger.hasScreenshotTaker()) {
-			logger.screenshot();
-		}
+		addFailureScreenshot(logger);
 
 		for (Marker marker : markers) {
 			logger.marker(marker);
@@ -284,9 +334,7 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 		FluentLogger logger = LOGGER.with()
 				.message(sb.toString());
 
-		if (FluentLogger.hasScreenshotTaker()) {
-			logger.screenshot();
-		}
+		addFailureScreenshot(logger);
 
 		for (Marker marker : markers) {
 			logger.marker(marker);
@@ -294,4 +342,13 @@ public class LoggingFormatterSpecificationListener implements SpecificationProce
 
 		logger.error();
 	}
+
+	private void addFailureScreenshot(FluentLogger logger) {
+		if (!FluentLogger.hasScreenshotTaker()) {
+			return;
+		}
+
+		// Depending on the policy this may be the screenshot taken for an earlier failure
+		logger.marker(failureScreenshots.getScreenshot(loggingAdaptor.getLogFile().getPath(), FluentLogger.getScreenshotTaker()));
+	}
 }
@@ -0,0 +1,82 @@
+package org.concordion.ext.loggingFormatter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.concordion.logback.LogbackAdaptor;
+import org.concordion.logback.LoggingListener;
+import org.concordion.slf4j.markers.ReportLoggerMarkers;
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Counts the steps logged by each test for {@link FailureScreenshotPolicy#UNLESS_NEW_STEP}.  Steps are counted as they are
+ * logged, so the count doesn't depend on how, or whether, a step is written to a log file.
+ */
+class StepCounter extends LoggingListener {
+	private static final String[] FILTER_MARKERS = { ReportLoggerMarkers.STEP_MARKER.getName() };
+
+	private final ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+
+	StepCounter() {
+		start();
+	}
+
+	@Override
+	public String[] getFilterMarkers() {
+		return FILTER_MARKERS;
+	}
+
+	@Override
+	public Marker getConcordionEventMarker() {
+		return null;
+	}
+
+	@Override
+	public boolean getHandleFailureAndThrowableEvents() {
+		return true;
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		String testName = event.getMDCPropertyMap().get(LogbackAdaptor.TEST_NAME);
+
+		if (testName == null) {
+			return;
+		}
+
+		AtomicLong count = counts.get(testName);
+
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = counts.putIfAbsent(testName, created);
+
+			if (count == null) {
+				count = created;
+			}
+		}
+
+		count.incrementAndGet();
+	}
+
+	/**
+	 * @param testName Test name, as held in MDC
+	 * @return The number of steps the test has logged so far
+	 */
+	long getCount(String testName) {
+		AtomicLong count = testName == null ? null : counts.get(testName);
+
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * @param testName Test name, as held in MDC, of a test that has finished
+	 */
+	void forget(String testName) {
+		if (testName != null) {
+			counts.remove(testName);
+		}
+	}
+}
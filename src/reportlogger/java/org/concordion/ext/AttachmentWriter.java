@@ -0,0 +1,18 @@
+package org.concordion.ext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the content of an attachment, allowing large content to be streamed straight into the attachment file.
+ */
+public interface AttachmentWriter {
+
+	/**
+	 * Write the attachment to the given output stream.
+	 * 
+	 * @param outputStream Stream to write the attachment to, this is closed once the method returns
+	 * @throws IOException if an I/O error occurs writing the attachment to the stream
+	 */
+	void writeTo(OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,133 @@
+package org.concordion.ext;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * A screenshot as captured by a {@link RawScreenshotTaker}, either the pixels or the bytes returned by the driver, that has
+ * not yet been written to a file.
+ */
+public final class RawScreenshot {
+	private final BufferedImage image;
+	private final byte[] encoded;
+	private final Dimension size;
+
+	private RawScreenshot(BufferedImage image, byte[] encoded, Dimension size) {
+		this.image = image;
+		this.encoded = encoded;
+		this.size = size;
+	}
+
+	/**
+	 * @param image Captured pixels
+	 * @return A raw screenshot
+	 */
+	public static RawScreenshot fromImage(BufferedImage image) {
+		return new RawScreenshot(image, null, new Dimension(image.getWidth(), image.getHeight()));
+	}
+
+	/**
+	 * @param encoded Screenshot already encoded in the screenshot taker's file format, eg from a WebDriver
+	 * @param size Size of the screenshot
+	 * @return A raw screenshot
+	 */
+	public static RawScreenshot fromEncoded(byte[] encoded, Dimension size) {
+		return new RawScreenshot(null, encoded, size);
+	}
+
+	/**
+	 * @return The captured pixels, or null if the screenshot was captured already encoded
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public Dimension getSize() {
+		return size;
+	}
+
+	/**
+	 * Encodes the screenshot.  A screenshot captured already encoded is written as is unless a quality is given.
+	 *
+	 * @param outputStream Stream to write the screenshot to
+	 * @param format Image format, eg "png"
+	 * @param quality Compression quality between 0 and 1, or a negative value for the format's default
+	 * @throws IOException if an I/O error occurs writing the screenshot to the stream
+	 */
+	public void writeTo(OutputStream outputStream, String format, float quality) throws IOException {
+		if (image == null && quality < 0) {
+			outputStream.write(encoded);
+			return;
+		}
+
+		BufferedImage source = image;
+		if (source == null) {
+			source = ImageIO.read(new ByteArrayInputStream(encoded));
+
+			if (source == null) {
+				throw new IOException("Unable to read screenshot to recompress it");
+			}
+		}
+
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+		if (!writers.hasNext()) {
+			throw new IOException("No image writer available for " + format);
+		}
+
+		if (isJpeg(format) && source.getColorModel().hasAlpha()) {
+			source = withoutAlpha(source);
+		}
+
+		ImageWriter writer = writers.next();
+		ImageOutputStream imageStream = ImageIO.createImageOutputStream(outputStream);
+
+		try {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+
+			if (quality >= 0 && param.canWriteCompressed()) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+
+				if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+					param.setCompressionType(param.getCompressionTypes()[0]);
+				}
+
+				param.setCompressionQuality(Math.min(1f, quality));
+			}
+
+			writer.setOutput(imageStream);
+			writer.write(null, new IIOImage(source, null, null), param);
+		} finally {
+			writer.dispose();
+			imageStream.close();
+		}
+	}
+
+	private static boolean isJpeg(String format) {
+		return "jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format);
+	}
+
+	private static BufferedImage withoutAlpha(BufferedImage source) {
+		BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = rgb.createGraphics();
+
+		try {
+			g.drawImage(source, 0, 0, Color.WHITE, null);
+		} finally {
+			g.dispose();
+		}
+
+		return rgb;
+	}
+}
@@ -0,0 +1,33 @@
+package org.concordion.ext;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A screenshot taker that can hand over the screenshot without encoding it, so that the slow work of compressing and
+ * writing the image is done on a background thread rather than holding up the test.
+ */
+public interface RawScreenshotTaker extends ScreenshotTaker {
+
+	/**
+	 * Capture the screen, doing as little work as possible.
+	 *
+	 * @return The captured screenshot
+	 * @throws IOException if an I/O error occurs capturing the screenshot
+	 * @throws ScreenshotUnavailableException if unable to take a screenshot
+	 */
+	RawScreenshot takeRawScreenshot() throws IOException;
+
+	/**
+	 * Takes a raw screenshot and encodes it straight away, used where the screenshot is needed immediately.
+	 */
+	@Override
+	default Dimension writeScreenshotTo(OutputStream outputStream) throws IOException {
+		RawScreenshot screenshot = takeRawScreenshot();
+
+		screenshot.writeTo(outputStream, getFileExtension(), -1);
+
+		return screenshot.getSize();
+	}
+}
@@ -0,0 +1,204 @@
+package org.concordion.logback;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.concordion.slf4j.markers.BaseDataMarker;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * An AsyncAppender that can be flushed, allowing the HTML log files to be written on a background thread while still
+ * being complete by the time a test finishes.
+ *
+ * <pre>
+ * &lt;appender name="ASYNC-HTML-FILE-PER-TEST" class="org.concordion.logback.FlushableAsyncAppender"&gt;
+ *     &lt;discardingThreshold&gt;0&lt;/discardingThreshold&gt;
+ *     &lt;includeCallerData&gt;true&lt;/includeCallerData&gt;
+ *     &lt;neverBlock&gt;false&lt;/neverBlock&gt;
+ *     &lt;appender-ref ref="HTML-FILE-PER-TEST" /&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ *
+ * <p>Events are written by a single worker thread in the order they were logged so the order within each test's log file
+ * is preserved.  {@link LogbackAdaptor} flushes any instances attached to the root logger when a log file is stopped.</p>
+ *
+ * @author Andrew Sumner
+ */
+public class FlushableAsyncAppender extends AsyncAppender {
+	private static final long DEFAULT_FLUSH_TIMEOUT = 30000;
+	private static final long NEVER_BLOCK_POLL = 50;
+
+	private long flushTimeout = DEFAULT_FLUSH_TIMEOUT;
+
+	/**
+	 * @return Maximum time in milliseconds that {@link #flush()} will wait for the queue to drain
+	 */
+	public long getFlushTimeout() {
+		return flushTimeout;
+	}
+
+	public void setFlushTimeout(long flushTimeout) {
+		this.flushTimeout = flushTimeout;
+	}
+
+	@Override
+	public void addAppender(Appender<ILoggingEvent> newAppender) {
+		FlushingAppender appender = new FlushingAppender(newAppender);
+
+		appender.setContext(newAppender.getContext());
+		appender.setName(newAppender.getName());
+		appender.start();
+
+		super.addAppender(appender);
+	}
+
+	@Override
+	protected void preprocess(ILoggingEvent event) {
+		if (event instanceof FlushEvent) {
+			return;
+		}
+
+		super.preprocess(event);
+
+		// Screenshots must be taken while the test is still at the point it was logged
+		prepareData(event.getMarker());
+	}
+
+	private void prepareData(Marker marker) {
+		if (marker == null) {
+			return;
+		}
+
+		if (marker instanceof BaseDataMarker) {
+			try {
+				((BaseDataMarker<?>) marker).prepare();
+			} catch (Exception e) {
+				// Remembered by the marker and reported when it's rendered
+			}
+		}
+
+		Iterator<Marker> references = marker.iterator();
+		while (references.hasNext()) {
+			prepareData(references.next());
+		}
+	}
+
+	/**
+	 * Blocks until all events queued before this call have been written by the attached appender.
+	 *
+	 * @return false if the events were not written within the flush timeout
+	 */
+	public boolean flush() {
+		if (!isStarted()) {
+			return true;
+		}
+
+		long deadline = System.currentTimeMillis() + flushTimeout;
+		FlushEvent event = new FlushEvent();
+
+		// Bypass the filters, they are only interested in real events
+		append(event);
+
+		try {
+			long remaining;
+
+			while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+				if (!isNeverBlock()) {
+					if (event.await(remaining)) {
+						return true;
+					}
+					break;
+				}
+
+				if (event.await(Math.min(remaining, NEVER_BLOCK_POLL))) {
+					return true;
+				}
+
+				// With neverBlock the flush event is dropped rather than waiting for space in a full queue. Once the queue is
+				// empty it can't still be waiting to be written, so offer another.
+				if (getNumberOfElementsInQueue() == 0) {
+					event = new FlushEvent();
+					append(event);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		addWarn("Timed out waiting for [" + getName() + "] to flush its queue");
+		return false;
+	}
+
+	/**
+	 * Marks a position in the queue, the event is released rather than logged once the worker thread reaches it.
+	 */
+	private static final class FlushEvent extends LoggingEvent {
+		private final CountDownLatch written = new CountDownLatch(1);
+
+		FlushEvent() {
+			// Must not be discarded when the queue is filling up
+			setLevel(Level.ERROR);
+			setLoggerName(FlushableAsyncAppender.class.getName());
+			setMessage("flush");
+			setTimeStamp(System.currentTimeMillis());
+		}
+
+		void release() {
+			written.countDown();
+		}
+
+		boolean await(long timeout) throws InterruptedException {
+			return written.await(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Runs on the worker thread in front of the attached appender.
+	 */
+	private static final class FlushingAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+		private final Appender<ILoggingEvent> appender;
+		private String testName = null;
+
+		FlushingAppender(Appender<ILoggingEvent> appender) {
+			this.appender = appender;
+		}
+
+		@Override
+		protected void append(ILoggingEvent event) {
+			if (event instanceof FlushEvent) {
+				((FlushEvent) event).release();
+				return;
+			}
+
+			// Sifted appenders are created on this thread, some things such as the layout's file header read the test name directly from MDC
+			String eventTestName = event.getMDCPropertyMap().get(LogbackAdaptor.TEST_NAME);
+
+			if (eventTestName == null ? testName != null : !eventTestName.equals(testName)) {
+				if (eventTestName == null) {
+					MDC.remove(LogbackAdaptor.TEST_NAME);
+				} else {
+					MDC.put(LogbackAdaptor.TEST_NAME, eventTestName);
+				}
+
+				testName = eventTestName;
+			}
+
+			appender.doAppend(event);
+		}
+
+		@Override
+		public void stop() {
+			super.stop();
+			appender.stop();
+		}
+	}
+}
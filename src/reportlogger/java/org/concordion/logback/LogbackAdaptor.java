@@ -1,13 +1,22 @@
 package org.concordion.logback;
 
 import java.io.File;
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.concordion.slf4j.ILoggingAdaptor;
+import org.concordion.slf4j.markers.ArtifactRegistry;
+import org.slf4j.ILoggerFactory;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.util.StatusPrinter;
 
 // TODO The implementation (and names of some of the interface methods) is tied into Concordion, can we make these a bit more generic?
@@ -25,7 +34,10 @@ public class LogbackAdaptor implements ILoggingAdaptor
 	public static final String EXAMPLE_SEPERATOR_PREFIX = "[";
 	public static final String EXAMPLE_SEPERATOR_SUFFIX = "]";
 
-	private static Stack<String> testStack = new Stack<String>();
+	// Each thread has its own stack of running tests, tests started using the Concordion Run command are nested on the same thread
+	private static final ThreadLocal<Deque<String>> testStack = new ThreadLocal<Deque<String>>();
+	// Log files created by TestLogFileAppender, keyed by test name
+	private static final ConcurrentMap<String, File> logFiles = new ConcurrentHashMap<String, File>();
 	private static String baseFolder = getConcordionBaseOutputDir();
 	
 //	private static List<String> specifications = new ArrayList<>();
@@ -46,9 +58,7 @@ public class LogbackAdaptor implements ILoggingAdaptor
 	 */
 	@Override
 	public void startLogFile(String testPath) {
-		testStack.push(testPath);
-
-		MDC.put(TEST_NAME, testPath);		
+		pushTest(testPath);
 	}
 	
 	/**
@@ -72,9 +82,7 @@ public class LogbackAdaptor implements ILoggingAdaptor
 		// lc.putProperty(LAYOUT_STYLESHEET, stylesheet);
 		// }
 		
-		testStack.push(path);
-
-		MDC.put(TEST_NAME, path);
+		pushTest(path);
 	}
 
 	@Override
@@ -86,31 +94,73 @@ public class LogbackAdaptor implements ILoggingAdaptor
 //		}
 //		examples.add(path);
 		
-		testStack.push(path);
-		
-		MDC.put(TEST_NAME, path);
+		pushTest(path);
 	}
 	
 	/**
-	 * If running tests sequentially (Concordion's default) then updates the MDC with the name of the previous test to handle tests calling
-	 * other tests using the Concordion Run command.  
+	 * Updates the MDC with the name of the previous test on this thread to handle tests calling other tests using the Concordion Run command.  
 	 * 
-	 * If running tests in parallel then this call is essentially redundant as tests started using the Concordion Run command will start on 
-	 * a new thread and MDC maintains a value per thread.
+	 * Each thread has its own stack of tests so tests running in parallel do not affect each other, if tests started using the Concordion Run
+	 * command start on a new thread then this call is essentially redundant.
 	 */
 	@Override
 	public void stopLogFile() {
-		testStack.pop();
+		flushAsyncAppenders();
+		
+		Deque<String> stack = testStack.get();
 		
-		if (testStack.isEmpty()) {
+		if (stack != null) {
+			String finished = stack.pollFirst();
+			
+			if (finished != null && !stack.contains(finished)) {
+				releaseLogFile(finished);
+			}
+		}
+		
+		if (stack == null || stack.isEmpty()) {
+			// Don't hold on to the stack once the thread has no running tests, eg pooled threads
+			testStack.remove();
 			MDC.remove(TEST_NAME);
 		} else {
-			MDC.put(TEST_NAME, testStack.peek());
+			MDC.put(TEST_NAME, stack.peekFirst());
+		}
+	}
+	
+	private void releaseLogFile(String testName) {
+		File logFile = logFiles.remove(testName);
+		
+		if (logFile != null) {
+			ArtifactRegistry.release(logFile.getPath());
 		}
+		
+		// Markers logged before the HTML log was created may refer to the plain text log, and unregistered log files are
+		// found by searching for them
+		ArtifactRegistry.release(new File(testName + "Log.html").getPath());
+		ArtifactRegistry.release(new File(testName + ".log").getPath());
+	}
+	
+	private void pushTest(String path) {
+		Deque<String> stack = testStack.get();
+		
+		if (stack == null) {
+			stack = new ArrayDeque<String>(4);
+			testStack.set(stack);
+		}
+		
+		stack.addFirst(path);
+		
+		MDC.put(TEST_NAME, path);
+		
+		// The test may have run before in this JVM, see releaseLogFile
+		ArtifactRegistry.reopen(new File(path + "Log.html").getPath());
+		ArtifactRegistry.reopen(new File(path + ".log").getPath());
 	}
 		
 	@Override
 	public boolean logFileExists() {
+		// An asynchronous appender may not have created the file yet
+		flushAsyncAppenders();
+		
         return getLogFile().exists();
     }
 
@@ -122,8 +172,12 @@ public class LogbackAdaptor implements ILoggingAdaptor
 			return new File("");
 		}
 		
-		File logFile;
+		File logFile = logFiles.get(currentTest);
+		if (logFile != null) {
+			return logFile;
+		}
 		
+		// Log file not created by a TestLogFileAppender, or not created yet, so look for it
 		logFile = new File(currentTest + "Log.html");
 		if (logFile.exists()) {
 			return logFile;
@@ -137,6 +191,58 @@ public class LogbackAdaptor implements ILoggingAdaptor
 		return new File("");
 	}
 	
+	/**
+	 * Records the log file that has been created for a test so that {@link #getLogFile()} does not need to search for it, 
+	 * called by {@link TestLogFileAppender}.  If more than one file is created for a test an HTML log is preferred, as 
+	 * {@link #getLogFile()} would find, otherwise the first is used.
+	 * 
+	 * @param testName Test name, as held in MDC
+	 * @param logFile Log file
+	 */
+	public static void registerLogFile(String testName, File logFile) {
+		ArtifactRegistry.reopen(logFile.getPath());
+		
+		File registered = logFiles.putIfAbsent(testName, logFile);
+		
+		// Eg the first event for a test went to a logger that only writes to the plain text log 
+		if (registered != null && !isHtml(registered) && isHtml(logFile)) {
+			logFiles.replace(testName, registered, logFile);
+		}
+	}
+	
+	private static boolean isHtml(File logFile) {
+		return logFile.getName().toLowerCase().endsWith(".html");
+	}
+
+	/**
+	 * Waits for any {@link FlushableAsyncAppender}s attached to the root logger to write out the events logged so far.
+	 */
+	public static void flushAsyncAppenders() {
+		ILoggerFactory factory = LoggerFactory.getILoggerFactory();
+		
+		if (!(factory instanceof LoggerContext)) {
+			return;
+		}
+		
+		Logger root = ((LoggerContext) factory).getLogger(Logger.ROOT_LOGGER_NAME);
+		Iterator<Appender<ILoggingEvent>> appenders = root.iteratorForAppenders();
+		
+		while (appenders.hasNext()) {
+			Appender<ILoggingEvent> appender = appenders.next();
+			
+			if (appender instanceof FlushableAsyncAppender) {
+				((FlushableAsyncAppender) appender).flush();
+			}
+		}
+	}
+
+	/**
+	 * @return The base output folder used by Concordion, always ends with a '/'
+	 */
+	public static String getBaseOutputDir() {
+		return baseFolder;
+	}
+
 	/**
 	 * Gets the base output folder used by concordion - copied from ConcordionBuilder.getBaseOutputDir()
 	 * 
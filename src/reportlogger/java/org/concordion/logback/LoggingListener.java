@@ -17,7 +17,8 @@ public abstract class LoggingListener extends AppenderBase<ILoggingEvent> {
 	/**
 	 * Implement this to provide a list of markers that this listener wants to deal with.
 	 * 
-	 * This listener will then only receive logging events for those log messages that contain that marker.
+	 * This listener will then only receive logging events for those log messages that contain that marker,
+	 * return null to receive every logging event.
 	 * 
 	 * @return A list of markers.
 	 */
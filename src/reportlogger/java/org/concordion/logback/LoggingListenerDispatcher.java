@@ -0,0 +1,333 @@
+package org.concordion.logback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * A single appender on the root logger that passes events on to the registered {@link LoggingListener}s.
+ *
+ * <p>Listeners are indexed by the marker names returned from {@link LoggingListener#getFilterMarkers()} so an event only
+ * reaches the listeners whose markers it carries, and costs next to nothing when it has no markers and no listener has
+ * asked for every event.  Listeners that return no filter markers receive every event.</p>
+ *
+ * <p>Listeners can either be global, receiving events from anywhere, or belong to a scope such as a running specification.
+ * The current scope is held in MDC under {@link #SCOPE_KEY} so scoped listeners only receive events logged within their
+ * scope, whichever thread they were registered on, at the cost of a single map lookup per event.</p>
+ *
+ * <p>Listeners can be added and removed at any time without touching the logback configuration.</p>
+ *
+ * @author Andrew Sumner
+ */
+public class LoggingListenerDispatcher extends UnsynchronizedAppenderBase<ILoggingEvent> {
+	public static final String APPENDER_NAME = "LOGGING-LISTENER-DISPATCHER";
+	public static final String SCOPE_KEY = "listenerscope";
+
+	private static final Index EMPTY = new Index(new LoggingListener[0]);
+	private static final AtomicLong SCOPE_COUNTER = new AtomicLong();
+
+	private static LoggingListenerDispatcher instance = null;
+
+	private final Object lock = new Object();
+	private volatile Index index = EMPTY;
+	private final ConcurrentMap<String, Index> scopes = new ConcurrentHashMap<String, Index>();
+
+	/**
+	 * Gets the dispatcher, attaching it to the root logger if it is not already attached, eg after logback has been reconfigured.
+	 *
+	 * @return The dispatcher
+	 */
+	public static synchronized LoggingListenerDispatcher getInstance() {
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+		Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+
+		if (instance == null) {
+			instance = new LoggingListenerDispatcher();
+			instance.setName(APPENDER_NAME);
+			instance.setContext(context);
+		}
+
+		if (!instance.isStarted()) {
+			instance.start();
+		}
+
+		if (!root.isAttached(instance)) {
+			root.addAppender(instance);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * @return A new scope id, unique within this JVM
+	 */
+	public static String newScope() {
+		return "scope-" + SCOPE_COUNTER.incrementAndGet();
+	}
+
+	/**
+	 * @return The scope that is active on the current thread, or null if none
+	 */
+	public static String getCurrentScope() {
+		return MDC.get(SCOPE_KEY);
+	}
+
+	/**
+	 * Makes the scope active on the current thread.
+	 *
+	 * @param scope Scope to enter
+	 * @return The scope that was active, to pass to {@link #exitScope(String)}
+	 */
+	public static String enterScope(String scope) {
+		String previous = MDC.get(SCOPE_KEY);
+
+		MDC.put(SCOPE_KEY, scope);
+
+		return previous;
+	}
+
+	/**
+	 * Restores the scope that was active before {@link #enterScope(String)} was called.
+	 *
+	 * @param previous Value returned from enterScope
+	 */
+	public static void exitScope(String previous) {
+		if (previous == null) {
+			MDC.remove(SCOPE_KEY);
+		} else {
+			MDC.put(SCOPE_KEY, previous);
+		}
+	}
+
+	/**
+	 * Adds a listener that will receive events from all scopes, the listener must be started before it will receive any events.
+	 *
+	 * @param listener Listener to add
+	 * @return false if the listener was already registered
+	 */
+	public boolean addListener(LoggingListener listener) {
+		return addListener(listener, null);
+	}
+
+	/**
+	 * Adds a listener that will only receive events logged while the scope is active.
+	 *
+	 * @param listener Listener to add
+	 * @param scope Scope to add the listener to, null for all scopes
+	 * @return false if the listener was already registered
+	 */
+	public boolean addListener(LoggingListener listener, String scope) {
+		synchronized (lock) {
+			List<LoggingListener> listeners = new ArrayList<LoggingListener>(Arrays.asList(getIndex(scope).listeners));
+
+			if (listeners.contains(listener)) {
+				return false;
+			}
+
+			listeners.add(listener);
+			setIndex(scope, listeners);
+
+			return true;
+		}
+	}
+
+	/**
+	 * Removes a listener, the listener is not stopped.
+	 *
+	 * @param listener Listener to remove
+	 * @return false if the listener was not registered
+	 */
+	public boolean removeListener(LoggingListener listener) {
+		return removeListener(listener, null);
+	}
+
+	/**
+	 * Removes a listener from a scope, the listener is not stopped.
+	 *
+	 * @param listener Listener to remove
+	 * @param scope Scope the listener was added to, null for all scopes
+	 * @return false if the listener was not registered
+	 */
+	public boolean removeListener(LoggingListener listener, String scope) {
+		synchronized (lock) {
+			List<LoggingListener> listeners = new ArrayList<LoggingListener>(Arrays.asList(getIndex(scope).listeners));
+
+			if (!listeners.remove(listener)) {
+				return false;
+			}
+
+			setIndex(scope, listeners);
+
+			return true;
+		}
+	}
+
+	/**
+	 * Removes all listeners from a scope that has finished, the listeners are not stopped.
+	 *
+	 * @param scope Scope to remove
+	 */
+	public void removeScope(String scope) {
+		if (scope != null) {
+			scopes.remove(scope);
+		}
+	}
+
+	public boolean isRegistered(LoggingListener listener) {
+		return isRegistered(listener, null);
+	}
+
+	public boolean isRegistered(LoggingListener listener, String scope) {
+		return Arrays.asList(getIndex(scope).listeners).contains(listener);
+	}
+
+	private Index getIndex(String scope) {
+		if (scope == null) {
+			return index;
+		}
+
+		Index scoped = scopes.get(scope);
+		return scoped == null ? EMPTY : scoped;
+	}
+
+	private void setIndex(String scope, List<LoggingListener> listeners) {
+		Index updated = listeners.isEmpty() ? EMPTY : new Index(listeners.toArray(new LoggingListener[listeners.size()]));
+
+		if (scope == null) {
+			index = updated;
+		} else if (updated == EMPTY) {
+			scopes.remove(scope);
+		} else {
+			scopes.put(scope, updated);
+		}
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		dispatch(index, event);
+
+		if (scopes.isEmpty()) {
+			return;
+		}
+
+		String scope = event.getMDCPropertyMap().get(SCOPE_KEY);
+
+		if (scope != null) {
+			Index scoped = scopes.get(scope);
+
+			if (scoped != null) {
+				dispatch(scoped, event);
+			}
+		}
+	}
+
+	private void dispatch(Index current, ILoggingEvent event) {
+		for (LoggingListener listener : current.catchAll) {
+			listener.doAppend(event);
+		}
+
+		Marker marker = event.getMarker();
+
+		if (marker == null || current.byMarker.isEmpty()) {
+			return;
+		}
+
+		List<LoggingListener> interested = findInterested(marker, current.byMarker, null);
+
+		if (interested != null) {
+			for (LoggingListener listener : interested) {
+				listener.doAppend(event);
+			}
+		}
+	}
+
+	/**
+	 * Walks the marker tree once collecting the listeners for each marker, a listener is only included once.
+	 */
+	private List<LoggingListener> findInterested(Marker marker, Map<String, LoggingListener[]> byMarker, List<LoggingListener> interested) {
+		LoggingListener[] listeners = byMarker.get(marker.getName());
+
+		if (listeners != null) {
+			if (interested == null) {
+				interested = new ArrayList<LoggingListener>(listeners.length);
+			}
+
+			for (LoggingListener listener : listeners) {
+				if (!interested.contains(listener)) {
+					interested.add(listener);
+				}
+			}
+		}
+
+		if (marker.hasReferences()) {
+			Iterator<Marker> references = marker.iterator();
+
+			while (references.hasNext()) {
+				interested = findInterested(references.next(), byMarker, interested);
+			}
+		}
+
+		return interested;
+	}
+
+	/**
+	 * Immutable snapshot of the registered listeners, replaced whenever a listener is added or removed.
+	 */
+	private static final class Index {
+		final LoggingListener[] listeners;
+		final LoggingListener[] catchAll;
+		final Map<String, LoggingListener[]> byMarker;
+
+		Index(LoggingListener[] listeners) {
+			List<LoggingListener> all = new ArrayList<LoggingListener>();
+			Map<String, List<LoggingListener>> named = new HashMap<String, List<LoggingListener>>();
+
+			for (LoggingListener listener : listeners) {
+				String[] markers = listener.getFilterMarkers();
+
+				if (markers == null || markers.length == 0) {
+					all.add(listener);
+					continue;
+				}
+
+				for (String marker : markers) {
+					List<LoggingListener> list = named.get(marker);
+
+					if (list == null) {
+						list = new ArrayList<LoggingListener>();
+						named.put(marker, list);
+					}
+
+					if (!list.contains(listener)) {
+						list.add(listener);
+					}
+				}
+			}
+
+			Map<String, LoggingListener[]> byMarker = new HashMap<String, LoggingListener[]>();
+			for (Map.Entry<String, List<LoggingListener>> entry : named.entrySet()) {
+				byMarker.put(entry.getKey(), entry.getValue().toArray(new LoggingListener[entry.getValue().size()]));
+			}
+
+			this.listeners = listeners;
+			this.catchAll = all.toArray(new LoggingListener[all.size()]);
+			this.byMarker = Collections.unmodifiableMap(byMarker);
+		}
+	}
+}
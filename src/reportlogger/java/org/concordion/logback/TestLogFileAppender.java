@@ -0,0 +1,52 @@
+package org.concordion.logback;
+
+import java.io.File;
+
+import ch.qos.logback.core.FileAppender;
+
+/**
+ * A FileAppender for use inside a SiftingAppender that tells {@link LogbackAdaptor} which file it has created for a test,
+ * saving LogbackAdaptor from having to look for the file on disk.
+ *
+ * <pre>
+ * &lt;sift&gt;
+ *     &lt;appender name="FILE-${testname}" class="org.concordion.logback.TestLogFileAppender"&gt;
+ *         &lt;testName&gt;${testname}&lt;/testName&gt;
+ *         &lt;file&gt;${testname}Log.html&lt;/file&gt;
+ *         ...
+ *     &lt;/appender&gt;
+ * &lt;/sift&gt;
+ * </pre>
+ *
+ * @author Andrew Sumner
+ */
+public class TestLogFileAppender<E> extends FileAppender<E> {
+	private String testName = null;
+
+	public String getTestName() {
+		return testName;
+	}
+
+	/**
+	 * @param testName Value of the SiftingAppender's discriminator, ie ${testname}
+	 */
+	public void setTestName(String testName) {
+		this.testName = testName;
+	}
+
+	@Override
+	public void start() {
+		super.start();
+
+		if (!isStarted()) {
+			return;
+		}
+
+		if (testName == null || testName.isEmpty()) {
+			addWarn("No testName set for the appender named [" + getName() + "], LogbackAdaptor will search for the log file");
+			return;
+		}
+
+		LogbackAdaptor.registerLogFile(testName, new File(getFile()));
+	}
+}
@@ -1,25 +1,46 @@
 package org.concordion.logback.filter;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
+import org.concordion.slf4j.markers.ReportLoggerMarkers;
 import org.slf4j.Marker;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.filter.Filter;
 import ch.qos.logback.core.spi.FilterReply;
 
+/**
+ * Filters events by the markers attached to them and optionally by the thread that logged them.
+ *
+ * <p>The marker names are compiled into a set as they are set and the event's marker tree is walked once per event, so
+ * the cost does not grow with the number of names being filtered on.  The filter works whether or not it has been
+ * started, as logback consults attached filters either way.</p>
+ */
 public class MarkerFilter extends Filter<ILoggingEvent> {
+	// Markers that are shared by every event that uses them, these can be matched by identity
+	private static final Marker[] WELL_KNOWN_MARKERS = { ReportLoggerMarkers.STEP_MARKER, ReportLoggerMarkers.PROGRESS_MARKER, ReportLoggerMarkers.TOOLTIP_MARKER };
+
 	private List<String> filterMarkers = new ArrayList<String>();
 	private String threadName = null;
+	private WeakReference<Thread> thread = null;
+
+	// Compiled from filterMarkers whenever they change
+	private volatile Set<String> markerNames = Collections.emptySet();
+	private volatile boolean[] wellKnownMatches = new boolean[WELL_KNOWN_MARKERS.length];
 
 	protected FilterReply onMatch = FilterReply.NEUTRAL;
 	protected FilterReply onMismatch = FilterReply.NEUTRAL;
 
 	/**
 	 * Appends an array of markers to the list of markers to filter by.
-	 * 
+	 *
 	 * @param markers
 	 */
 	public void setMarkers(String[] markers) {
@@ -28,9 +49,10 @@ public class MarkerFilter extends Filter<ILoggingEvent> {
 		}
 
 		this.filterMarkers.addAll(Arrays.asList(markers));
+		compile();
 	}
 
-// TODO JUnit giving "Warning: Class 'org.concordion.logback.filter.MarkerFilter' contains multiple setters for the same property 'onMatch'." 
+// TODO JUnit giving "Warning: Class 'org.concordion.logback.filter.MarkerFilter' contains multiple setters for the same property 'onMatch'."
 //// when this present
 //	public void setOnMatch(String action) {
 //		onMatch = FilterReply.valueOf(action);
@@ -49,7 +71,7 @@ public class MarkerFilter extends Filter<ILoggingEvent> {
 	}
 	/**
 	 * Appends a marker to the list of markers to filter by.
-	 * 
+	 *
 	 * @param marker
 	 */
 	public void setMarker(String marker) {
@@ -58,47 +80,103 @@ public class MarkerFilter extends Filter<ILoggingEvent> {
 		}
 
 		this.filterMarkers.add(marker);
+		compile();
 	}
 
 	public void clearMarkers() {
 		this.filterMarkers.clear();
+		compile();
 	}
 
 	/**
 	 * Sets the name of the thread to filter by.
-	 * 
+	 *
 	 * @param name Thread name
 	 */
 	public void setThread(String name) {
 		this.threadName = name;
 	}
 
+	/**
+	 * Sets the thread to filter by, this is cheaper than filtering by name and is not affected by threads being renamed.
+	 * 
+	 * <p>Not named setThread as Joran warns about multiple setters for the same property.</p>
+	 *
+	 * @param thread Thread
+	 */
+	public void setFilterThread(Thread thread) {
+		this.thread = thread == null ? null : new WeakReference<Thread>(thread);
+	}
+
 	@Override
 	public FilterReply decide(ILoggingEvent event) {
-		if (threadName != null && !threadName.isEmpty()) {
-			if (!Thread.currentThread().getName().equals(threadName)) {
+		if (thread != null || (threadName != null && !threadName.isEmpty())) {
+			if (!isFilteredThread()) {
 				return FilterReply.DENY;
 			}
 
-			if (filterMarkers.isEmpty()) {
+			if (markerNames.isEmpty()) {
 				return FilterReply.NEUTRAL;
 			}
 		}
-		
-		for (String marker : filterMarkers) {
-			if (containsMarker(event.getMarker(), marker)) {
-				return onMatch;
-			}
+
+		if (containsMarker(event.getMarker())) {
+			return onMatch;
 		}
 
 		return onMismatch;
 	}
-	
-	private boolean containsMarker(Marker reference, String name) {
+
+	private boolean isFilteredThread() {
+		if (thread != null) {
+			return thread.get() == Thread.currentThread();
+		}
+
+		return Thread.currentThread().getName().equals(threadName);
+	}
+
+	private boolean containsMarker(Marker reference) {
 		if (reference == null) {
 			return false;
 		}
 
-		return reference.contains(name);
+		if (matches(reference)) {
+			return true;
+		}
+
+		if (!reference.hasReferences()) {
+			return false;
+		}
+
+		Iterator<Marker> references = reference.iterator();
+		while (references.hasNext()) {
+			if (containsMarker(references.next())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean matches(Marker marker) {
+		for (int i = 0; i < WELL_KNOWN_MARKERS.length; i++) {
+			if (marker == WELL_KNOWN_MARKERS[i]) {
+				return wellKnownMatches[i];
+			}
+		}
+
+		return markerNames.contains(marker.getName());
+	}
+
+	private void compile() {
+		Set<String> names = Collections.unmodifiableSet(new HashSet<String>(filterMarkers));
+		boolean[] matches = new boolean[WELL_KNOWN_MARKERS.length];
+
+		for (int i = 0; i < WELL_KNOWN_MARKERS.length; i++) {
+			matches[i] = names.contains(WELL_KNOWN_MARKERS[i].getName());
+		}
+
+		this.wellKnownMatches = matches;
+		this.markerNames = names;
 	}
 }
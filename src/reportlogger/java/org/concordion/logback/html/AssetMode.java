@@ -0,0 +1,9 @@
+package org.concordion.logback.html;
+
+public enum AssetMode {
+	/** Style sheet and script are embedded in every log file, producing self contained log files */
+	INLINE,
+	
+	/** Style sheet and script are written once to the Concordion output folder and linked to from each log file */
+	EXTERNAL;
+}
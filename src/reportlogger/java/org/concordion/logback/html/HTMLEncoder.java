@@ -0,0 +1,233 @@
+package org.concordion.logback.html;
+
+import static ch.qos.logback.core.CoreConstants.LINE_SEPARATOR;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+/**
+ * Encoder for the {@link HTMLLayout}, a drop in replacement for LayoutWrappingEncoder:
+ *
+ * <pre>
+ * &lt;encoder class="org.concordion.logback.html.HTMLEncoder"&gt;
+ *     &lt;layout class="org.concordion.logback.html.HTMLLayout"&gt;
+ *         ...
+ *     &lt;/layout&gt;
+ * &lt;/encoder&gt;
+ * </pre>
+ *
+ * <p>Rows are rendered by the layout into a reusable per thread buffer and encoded straight to UTF-8 bytes, skipping the
+ * intermediate String that LayoutWrappingEncoder creates for every event.  The log files are always written as UTF-8, which
+ * the layout's file header declares, so when using LayoutWrappingEncoder instead set its charset to UTF-8.</p>
+ *
+ * @author Andrew Sumner
+ */
+public class HTMLEncoder extends EncoderBase<ILoggingEvent> {
+	private static final byte[] EMPTY = new byte[0];
+	private static final ThreadLocal<RowBuffer> BUFFERS = new ThreadLocal<RowBuffer>();
+
+	// The file header is identical for most log files, so its encoded form is shared
+	private static final ConcurrentMap<String, byte[]> FILE_HEADERS = new ConcurrentHashMap<String, byte[]>();
+
+	private HTMLLayout layout;
+
+	public HTMLLayout getLayout() {
+		return layout;
+	}
+
+	public void setLayout(HTMLLayout layout) {
+		this.layout = layout;
+	}
+
+	@Override
+	public void start() {
+		if (layout == null) {
+			addError("No layout set for the encoder named [" + getClass().getName() + "]");
+			return;
+		}
+
+		super.start();
+	}
+
+	@Override
+	public byte[] headerBytes() {
+		if (layout == null) {
+			return EMPTY;
+		}
+
+		byte[] fileHeader = getFileHeaderBytes();
+		byte[] presentationHeader = toBytes(layout.getPresentationHeader());
+		byte[] separator = LINE_SEPARATOR.getBytes(StandardCharsets.UTF_8);
+
+		if (fileHeader.length + presentationHeader.length == 0) {
+			return EMPTY;
+		}
+
+		byte[] header = Arrays.copyOf(fileHeader, fileHeader.length + presentationHeader.length + separator.length);
+		System.arraycopy(presentationHeader, 0, header, fileHeader.length, presentationHeader.length);
+		System.arraycopy(separator, 0, header, fileHeader.length + presentationHeader.length, separator.length);
+
+		return header;
+	}
+
+	@Override
+	public byte[] encode(ILoggingEvent event) {
+		RowBuffer buffer = BUFFERS.get();
+
+		if (buffer == null) {
+			buffer = new RowBuffer();
+		} else {
+			// Take ownership of the buffer in case rendering results in a nested call on this thread
+			BUFFERS.set(null);
+		}
+
+		try {
+			layout.doLayout(buffer.chars, event);
+
+			return buffer.toUtf8();
+		} finally {
+			if (buffer.reset()) {
+				BUFFERS.set(buffer);
+			}
+		}
+	}
+
+	@Override
+	public byte[] footerBytes() {
+		if (layout == null) {
+			return EMPTY;
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		if (layout.getPresentationFooter() != null) {
+			sb.append(layout.getPresentationFooter());
+		}
+
+		if (layout.getFileFooter() != null) {
+			sb.append(layout.getFileFooter());
+		}
+
+		return toBytes(sb.toString());
+	}
+
+	private byte[] getFileHeaderBytes() {
+		String fileHeader = layout.getFileHeader();
+
+		if (fileHeader == null) {
+			return EMPTY;
+		}
+
+		byte[] bytes = FILE_HEADERS.get(fileHeader);
+
+		if (bytes == null) {
+			bytes = toBytes(fileHeader);
+			FILE_HEADERS.putIfAbsent(fileHeader, bytes);
+		}
+
+		return bytes;
+	}
+
+	private static byte[] toBytes(String value) {
+		if (value == null || value.isEmpty()) {
+			return EMPTY;
+		}
+
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Character buffer reused between events on the same thread.
+	 */
+	private static final class RowBuffer {
+		private static final int INITIAL_SIZE = 1024;
+		private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+		final StringBuilder chars = new StringBuilder(INITIAL_SIZE);
+
+		/**
+		 * Encodes the characters in the buffer as UTF-8, straight into an array of the exact size so a large row is only
+		 * allocated once.
+		 */
+		byte[] toUtf8() {
+			int length = chars.length();
+
+			if (length == 0) {
+				return EMPTY;
+			}
+
+			byte[] bytes = new byte[encodedLength(length)];
+			int pos = 0;
+
+			for (int i = 0; i < length; i++) {
+				char c = chars.charAt(i);
+
+				if (c < 0x80) {
+					bytes[pos++] = (byte) c;
+				} else if (c < 0x800) {
+					bytes[pos++] = (byte) (0xC0 | (c >> 6));
+					bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+
+					bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+					bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					// Unpaired surrogate, same replacement as String.getBytes()
+					bytes[pos++] = '?';
+				} else {
+					bytes[pos++] = (byte) (0xE0 | (c >> 12));
+					bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+
+			return bytes;
+		}
+
+		/**
+		 * @return Number of bytes the first length characters in the buffer encode to, matching {@link #toUtf8()}
+		 */
+		private int encodedLength(int length) {
+			int count = length;
+
+			for (int i = 0; i < length; i++) {
+				char c = chars.charAt(i);
+
+				if (c < 0x80) {
+					continue;
+				} else if (c < 0x800) {
+					count += 1;
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+					// Four bytes for the pair
+					count += 2;
+					i++;
+				} else if (!Character.isSurrogate(c)) {
+					count += 2;
+				}
+			}
+
+			return count;
+		}
+
+		/**
+		 * @return false if the buffers have grown too large to keep
+		 */
+		boolean reset() {
+			if (chars.capacity() > MAX_RETAINED_SIZE) {
+				return false;
+			}
+
+			chars.setLength(0);
+
+			return true;
+		}
+	}
+}
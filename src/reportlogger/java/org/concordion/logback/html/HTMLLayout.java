@@ -2,31 +2,36 @@ package org.concordion.logback.html;
 
 import static ch.qos.logback.core.CoreConstants.LINE_SEPARATOR;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 import org.apache.commons.io.IOUtils;
 import org.concordion.logback.LogbackAdaptor;
 import org.concordion.slf4j.markers.BaseDataMarker;
 import org.concordion.slf4j.markers.DataMarker;
 import org.concordion.slf4j.markers.HtmlMessageMarker;
+import org.concordion.slf4j.markers.InlinePolicy;
 import org.concordion.slf4j.markers.ReportLoggerMarkers;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.slf4j.Marker;
-import org.slf4j.helpers.MessageFormatter;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.pattern.DateConverter;
 import ch.qos.logback.classic.pattern.FileOfCallerConverter;
 import ch.qos.logback.classic.pattern.LevelConverter;
 import ch.qos.logback.classic.pattern.MDCConverter;
+import ch.qos.logback.classic.pattern.MessageConverter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.helpers.Transform;
 import ch.qos.logback.core.html.HTMLLayoutBase;
 import ch.qos.logback.core.html.IThrowableRenderer;
 import ch.qos.logback.core.pattern.Converter;
@@ -54,8 +59,30 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 
     private IThrowableRenderer<ILoggingEvent> throwableRenderer;
     private StepRecorder stepRecorder = StepRecorder.STEP_MARKER;
+    private AssetMode assetMode = AssetMode.INLINE;
+    private CellTemplate[] cells = null;
 	private int columnCount;
 	private String stylesheet = "";
+	private boolean stylesheetResolved = false;
+	private String fileHeader = null;
+	private int inlineThreshold = 0;
+	private int previewLines = 20;
+	private int previewSize = 4 * 1024;
+
+	// SiftingAppender creates a new layout for every log file, so headers are shared between instances
+	private static final ConcurrentMap<String, String> FILE_HEADERS = new ConcurrentHashMap<String, String>();
+
+	// Reusable per thread buffer for rendering rows, buffers that grow larger than this are not retained 
+	private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+	private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<StringBuilder>();
+
+	// Only looked up for data that is too large to inline
+	private static final Supplier<String> CURRENT_LOG_FILE = new Supplier<String>() {
+		@Override
+		public String get() {
+			return new LogbackAdaptor().getLogFile().getPath();
+		}
+	};
 	
     /**
      * Constructs a PatternLayout using the DEFAULT_LAYOUT_PATTERN.
@@ -77,18 +104,67 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 		return stepRecorder.name();
 	}
 
+	public void setAssetMode(String value) {
+		assetMode = AssetMode.valueOf(value);
+		fileHeader = null;
+	}
+
+	public String getAssetMode() {
+		return assetMode.name();
+	}
+
 	public void setStylesheet(String value) {
 		stylesheet = value;
+		stylesheetResolved = false;
+		fileHeader = null;
 	}
 
 	public String getStylesheet() {
 		return stylesheet;
 	}
 
+	/**
+	 * @param value Data larger than this, in characters (bytes for attachments), is written to a file of its own and only 
+	 * 			a preview of it shown in the log, 0 (the default) to always show data in full 
+	 */
+	public void setInlineThreshold(int value) {
+		inlineThreshold = value;
+	}
+
+	public int getInlineThreshold() {
+		return inlineThreshold;
+	}
+
+	/**
+	 * @param value Maximum number of lines shown in the preview of data larger than the inline threshold
+	 */
+	public void setPreviewLines(int value) {
+		previewLines = value;
+	}
+
+	public int getPreviewLines() {
+		return previewLines;
+	}
+
+	/**
+	 * @param value Maximum number of characters shown in the preview of data larger than the inline threshold
+	 */
+	public void setPreviewSize(int value) {
+		previewSize = value;
+	}
+
+	public int getPreviewSize() {
+		return previewSize;
+	}
+
 	public boolean hasStylesheet() {
-		if (stylesheet == null || stylesheet.isEmpty()) {
-			LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
-			stylesheet = context.getProperty(LogbackAdaptor.LAYOUT_STYLESHEET);
+		if (!stylesheetResolved) {
+			if (stylesheet == null || stylesheet.isEmpty()) {
+				LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+				stylesheet = context.getProperty(LogbackAdaptor.LAYOUT_STYLESHEET);
+			}
+			
+			stylesheetResolved = true;
 		}
 
 		return stylesheet != null && !stylesheet.isEmpty();
@@ -98,6 +174,14 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
     public void setPattern(String conversionPattern) {
     	super.setPattern(conversionPattern);
     	columnCount = getColumnCount();
+    	fileHeader = null;
+    	cells = null;
+	}
+
+	@Override
+	public void setTitle(String title) {
+		super.setTitle(title);
+		fileHeader = null;
 	}
     
     @Override
@@ -109,9 +193,30 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
         }
         if (errorCount == 0) {
             super.start();
+            cells = compileCells();
         }
     }
 
+	/**
+	 * Pre-renders everything about a table cell that does not change between events so that 
+	 * rendering an event only needs to append the converted values.
+	 */
+	private CellTemplate[] compileCells() {
+		int count = 0;
+		for (Converter<ILoggingEvent> c = head; c != null; c = c.getNext()) {
+			count++;
+		}
+
+		CellTemplate[] compiled = new CellTemplate[count];
+		int index = 0;
+
+		for (Converter<ILoggingEvent> c = head; c != null; c = c.getNext()) {
+			compiled[index++] = new CellTemplate(c, computeConverterName(c));
+		}
+
+		return compiled;
+	}
+
     protected Map<String, String> getDefaultConverterMap() {
         return PatternLayout.defaultConverterMap;
     }
@@ -121,14 +226,51 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 			return "";
 		}
 
-        StringBuilder buf = new StringBuilder();
+		StringBuilder buf = BUFFERS.get();
+		if (buf == null) {
+			buf = new StringBuilder(1024);
+		} else {
+			// Take ownership of the buffer in case rendering results in a nested call on this thread
+			BUFFERS.set(null);
+		}
+
+		try {
+			appendEvent(buf, event);
+			return buf.toString();
+		} finally {
+			if (buf.capacity() <= MAX_RETAINED_BUFFER) {
+				buf.setLength(0);
+				BUFFERS.set(buf);
+			}
+		}
+    }
+
+	/**
+	 * Appends the HTML for an event to the supplied buffer rather than returning a new String.
+	 * 
+	 * @param buf Buffer to append to
+	 * @param event The logging event
+	 */
+	public void doLayout(StringBuilder buf, ILoggingEvent event) {
+		if (containsMarker(event, ReportLoggerMarkers.PROGRESS_MARKER)) {
+			return;
+		}
+
+		appendEvent(buf, event);
+	}
+
+	private void appendEvent(StringBuilder buf, ILoggingEvent event) {
+		if (cells == null) {
+			cells = compileCells();
+		}
+
         startNewTableIfLimitReached(buf);
 
 		counter++;
 
 		if (containsMarker(event, ReportLoggerMarkers.STEP_MARKER.getName()) || event.getLevel() == stepRecorder.getLevel()) {
 			appendStepToBuffer(buf, event);
-        	return buf.toString();
+        	return;
         }
         
 		appendMessageToBuffer(buf, event);
@@ -144,9 +286,7 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
         		
             throwableRenderer.render(buf, event);
         }
-        
-        return buf.toString();
-    }
+	}
 
 	private void appendData(Marker marker, StringBuilder buf, ILoggingEvent event) {
 		if (marker instanceof BaseDataMarker) {
@@ -170,7 +310,7 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 		if (event.getMarker() instanceof DataMarker) {
 			buf.append(event.getFormattedMessage());
 		} else {
-			buf.append(Transform.escapeTags(event.getFormattedMessage()));
+			TransformText.appendEscapedTags(buf, event.getFormattedMessage());
 		}
         
 		buf.append("</td>");
@@ -178,104 +318,93 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 		buf.append("</tr>");
 	}
 	
-	private String getFormattedMessage(String format, Object[] arguments) {
-		return MessageFormatter.arrayFormat(format, arguments).getMessage();
-	}
-	
 	private void appendMessageToBuffer(StringBuilder buf, ILoggingEvent event) {
-		boolean escapeTags = true;
-		Field field = null;
-		String originalMessage = null;
+		// Use HTML formatted version of the message in place of the plain log message, the event itself is left untouched
+		// as other appenders may be using it
+		String htmlMessage = null;
+		Marker marker = getMarker(event.getMarker(), HtmlMessageMarker.MARKER_NAME);
+		
+		if (marker instanceof HtmlMessageMarker) {
+			htmlMessage = ((HtmlMessageMarker) marker).getFormattedMessage();
+		}
 		
         buf.append(LINE_SEPARATOR);
-		buf.append("<tr class=\"record ").append(event.getLevel().toString().toLowerCase()).append("\">");
+		buf.append("<tr class=\"record ").append(getLevelClass(event.getLevel())).append("\">");
         buf.append(LINE_SEPARATOR);
 		buf.append("<td>").append(counter).append(".</td>");
-		
-		if (containsMarker(event, HtmlMessageMarker.MARKER_NAME)) {
-			// Replace plain log message with HTML formatted version 
-			escapeTags = false;
-			
-			HtmlMessageMarker marker = (HtmlMessageMarker) getMarker(event.getMarker(), HtmlMessageMarker.MARKER_NAME);
-			
-			try {
-				originalMessage = event.getFormattedMessage();
-				
-				field = event.getClass().getDeclaredField("formattedMessage");
-				field.setAccessible(true);
-				field.set(event, getFormattedMessage(marker.getFormat(), marker.getArguments()));
-			} catch (Throwable e) {
-				// Silently ignore
-			}
-		}
 
-		Converter<ILoggingEvent> c = head;
-		while (c != null) {
-			appendEventToBuffer(buf, c, event, escapeTags);
-			c = c.getNext();
-		}
-        
-		if (field != null) {
-			try {
-				field.set(event, originalMessage);
-			} catch (Throwable e) {
-				// Silently ignore
+		for (CellTemplate cell : cells) {
+			if (htmlMessage != null && cell.isMessage) {
+				appendEventToBuffer(buf, cell, htmlMessage, event, false);
+			} else {
+				appendEventToBuffer(buf, cell, cell.converter.convert(event), event, true);
 			}
 		}
 		
         buf.append("</tr>");
 	}
 
-	private void appendEventToBuffer(StringBuilder buf, Converter<ILoggingEvent> c, ILoggingEvent event, boolean escapeTags) {
-		String name = computeConverterName(c);
-		
-        buf.append("<td class=\"");
-        buf.append(name);
+	private void appendEventToBuffer(StringBuilder buf, CellTemplate cell, String value, ILoggingEvent event, boolean escapeTags) {
+		buf.append(cell.prefix);
 
-		if (c instanceof LevelConverter) {
-        	buf.append(" ").append(event.getLevel().toString().toLowerCase());	
+		if (cell.isLevel) {
+        	buf.append(' ').append(getLevelClass(event.getLevel()));	
         }
-		buf.append("\"");
+		buf.append('"');
 
-		if (c instanceof FileOfCallerConverter) {
-			buf.append(" title=\"").append(c.convert(event)).append("\"");
+		if (cell.hasTitle) {
+			buf.append(" title=\"").append(value).append('"');
 		}
 
-		buf.append(">");
+		buf.append('>');
 		if (escapeTags) {
-			buf.append(TransformText.escapeText(Transform.escapeTags(c.convert(event))));
+			TransformText.appendEscapedText(buf, value);
 		} else {
-			buf.append(c.convert(event));
+			buf.append(value);
 		}
         buf.append("</td>");
         buf.append(LINE_SEPARATOR);
     }
 	
 	public void appendDataToBuffer(StringBuilder buf, ILoggingEvent event, BaseDataMarker<?> data) {
-		if (!data.hasData()) {
-			return;
+		String formattedData;
+		
+		try {
+			// Takes the screenshot or writes the attachment if this is the first appender to use it 
+			data.prepare();
+			
+			if (!data.hasData()) {
+				return;
+			}
+			
+			formattedData = data.getFormattedData(getInlinePolicy());
+		} catch (Exception e) {
+			addError("Unable to prepare log data", e);
+			formattedData = TransformText.escapeTags("Unable to prepare log data: " + e.getMessage());
 		}
 
 		buf.append(LINE_SEPARATOR);
-		buf.append("<tr class=\"companion ").append(event.getLevel().toString().toLowerCase()).append("\">");
+		buf.append("<tr class=\"companion ").append(getLevelClass(event.getLevel())).append("\">");
 		buf.append(LINE_SEPARATOR);
 		buf.append("<td class=\"indent\"></td><td colspan=\"").append(columnCount).append("\" class=\"output\">");
 		
-		try {
-			buf.append(LINE_SEPARATOR);
-
-			buf.append(data.getFormattedData());
-			
-			buf.append(LINE_SEPARATOR);
-		} catch (Exception e) {
-			buf.append(e.getMessage());
-		}
+		buf.append(LINE_SEPARATOR);
+		buf.append(formattedData);
+		buf.append(LINE_SEPARATOR);
 		
 		buf.append("</td>");
 		buf.append(LINE_SEPARATOR);
 		buf.append("</tr>");
 	}
 
+	private InlinePolicy getInlinePolicy() {
+		if (inlineThreshold <= 0) {
+			return InlinePolicy.UNLIMITED;
+		}
+		
+		return new InlinePolicy(inlineThreshold, previewLines, previewSize, CURRENT_LOG_FILE);
+	}
+
 	public IThrowableRenderer<?> getThrowableRenderer() {
         return throwableRenderer;
     }
@@ -312,7 +441,67 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 
     @Override
 	public String getFileHeader() {
-		StringBuilder sbuf = new StringBuilder();
+		String header = fileHeader;
+		
+		if (header == null) {
+			String currentStylesheet = hasStylesheet() ? stylesheet : null;
+			String assetPath = assetMode == AssetMode.EXTERNAL ? prepareExternalAssets() : null;
+			String key = title + LINE_SEPARATOR + currentStylesheet + LINE_SEPARATOR + assetPath;
+			
+			header = FILE_HEADERS.get(key);
+			if (header == null) {
+				header = buildFileHeader(currentStylesheet, assetPath);
+				
+				String existing = FILE_HEADERS.putIfAbsent(key, header);
+				if (existing != null) {
+					header = existing;
+				}
+			}
+			
+			fileHeader = header;
+		}
+		
+		return header;
+	}
+
+	/**
+	 * Ensures the shared style sheet and script exist in the Concordion output folder.
+	 * 
+	 * @return Path to the assets relative to the current log file, or null if they could not be written and must be inlined
+	 */
+	private String prepareExternalAssets() {
+		String baseFolder = LogbackAdaptor.getBaseOutputDir();
+		String testName = MDC.get(LogbackAdaptor.TEST_NAME);
+		File folder;
+		StringBuilder relativePath = new StringBuilder();
+
+		if (testName != null && testName.replace('\\', '/').startsWith(baseFolder)) {
+			String logPath = testName.replace('\\', '/').substring(baseFolder.length());
+
+			for (int i = 0; i < logPath.length(); i++) {
+				if (logPath.charAt(i) == '/') {
+					relativePath.append("../");
+				}
+			}
+
+			folder = new File(baseFolder);
+		} else {
+			// Not a Concordion test, place the assets alongside the log file
+			folder = new File(testName == null ? "" : testName).getAbsoluteFile().getParentFile();
+		}
+
+		try {
+			HtmlLogAssets.writeTo(folder);
+		} catch (IOException e) {
+			addError("Unable to write HTML log assets to " + folder + ", falling back to inline assets", e);
+			return null;
+		}
+
+		return relativePath.toString();
+	}
+
+	private String buildFileHeader(String stylesheet, String assetPath) {
+		StringBuilder sbuf = new StringBuilder(HtmlLogAssets.INLINE_CSS.length() + HtmlLogAssets.INLINE_JS.length() + 1024);
 		sbuf.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\"");
 		sbuf.append(" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">");
 		sbuf.append(LINE_SEPARATOR);
@@ -320,13 +509,19 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 		sbuf.append(LINE_SEPARATOR);
 		sbuf.append("  <head>");
 		sbuf.append(LINE_SEPARATOR);
+		sbuf.append("    <meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\"/>").append(LINE_SEPARATOR);
 		sbuf.append("    <title>").append(title).append("</title>").append(LINE_SEPARATOR);
-		if (hasStylesheet()) {
+		if (stylesheet != null) {
 			sbuf.append("    <link rel=\"stylesheet\" type=\"text/css\" href=\"").append(stylesheet).append("\"/>").append(LINE_SEPARATOR);
 		}
 		
-		sbuf.append(readFile("htmllog.css"));
-		sbuf.append(readFile("htmllog.js"));
+		if (assetPath == null) {
+			sbuf.append(HtmlLogAssets.INLINE_CSS);
+			sbuf.append(HtmlLogAssets.INLINE_JS);
+		} else {
+			sbuf.append("    <link rel=\"stylesheet\" type=\"text/css\" href=\"").append(assetPath).append(HtmlLogAssets.CSS_FILENAME).append("\"/>").append(LINE_SEPARATOR);
+			sbuf.append("    <script type=\"text/javascript\" src=\"").append(assetPath).append(HtmlLogAssets.JS_FILENAME).append("\"></script>");
+		}
 		// cssBuilder.addCss(sbuf);
 
 		sbuf.append(LINE_SEPARATOR);
@@ -361,26 +556,25 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
     }
 
     private void buildHeaderRowForTable(StringBuilder sbuf) {
-		Converter<?> c = head;
-        String name;
+		if (cells == null) {
+			cells = compileCells();
+		}
+
         sbuf.append("<thead>");
         sbuf.append(LINE_SEPARATOR);
         
 		sbuf.append("<tr><th class=\"Row\">Row</th>");
         sbuf.append(LINE_SEPARATOR);
         
-		while (c != null) {
-			name = computeConverterName(c);
-			if (name == null) {
-				c = c.getNext();
+		for (CellTemplate cell : cells) {
+			if (cell.name == null) {
 				continue;
 			}
 
-			sbuf.append("<th class=\"").append(name).append("\">");
-			sbuf.append(name.replaceAll("(.)([A-Z])", "$1&nbsp;$2"));
+			sbuf.append("<th class=\"").append(cell.name).append("\">");
+			sbuf.append(cell.name.replaceAll("(.)([A-Z])", "$1&nbsp;$2"));
 			sbuf.append("</th>");
 			sbuf.append(LINE_SEPARATOR);
-			c = c.getNext();
         }
         
         sbuf.append("</tr>");
@@ -427,10 +621,48 @@ public class HTMLLayout extends HTMLLayoutBase<ILoggingEvent> {
 		return null;
 	}
 	
+	private static String getLevelClass(Level level) {
+		switch (level.levelInt) {
+		case Level.TRACE_INT:
+			return "trace";
+		case Level.DEBUG_INT:
+			return "debug";
+		case Level.INFO_INT:
+			return "info";
+		case Level.WARN_INT:
+			return "warn";
+		case Level.ERROR_INT:
+			return "error";
+		default:
+			return level.levelStr.toLowerCase();
+		}
+	}
+
 	private int getColumnCount() {
 		return pattern.length() - pattern.replace("%", "").length();
 	}
 
+	/**
+	 * The parts of a table cell that are fixed for a given converter.
+	 */
+	private static final class CellTemplate {
+		final Converter<ILoggingEvent> converter;
+		final String name;
+		final String prefix;
+		final boolean isLevel;
+		final boolean hasTitle;
+		final boolean isMessage;
+
+		CellTemplate(Converter<ILoggingEvent> converter, String name) {
+			this.converter = converter;
+			this.name = name;
+			this.prefix = "<td class=\"" + name;
+			this.isLevel = converter instanceof LevelConverter;
+			this.hasTitle = converter instanceof FileOfCallerConverter;
+			this.isMessage = converter instanceof MessageConverter;
+		}
+	}
+
 	public static String readFile(String filename) {
 		InputStream input = null;
 
@@ -20,7 +20,6 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.StackTraceElementProxy;
 import ch.qos.logback.core.CoreConstants;
-import ch.qos.logback.core.helpers.Transform;
 import ch.qos.logback.core.html.IThrowableRenderer;
 
 public class HTMLThrowableRenderer implements IThrowableRenderer<ILoggingEvent> {
@@ -64,7 +63,7 @@ public class HTMLThrowableRenderer implements IThrowableRenderer<ILoggingEvent>
             StackTraceElementProxy step = stepArray[i];
 			// sbuf.append(TRACE_PREFIX);
 			sbuf.append("<div class=\"stackTraceEntry\">");
-            sbuf.append(Transform.escapeTags(step.toString()));
+            TransformText.appendEscapedTags(sbuf, step.toString());
 			sbuf.append("</div>");
             sbuf.append(CoreConstants.LINE_SEPARATOR);
         }
@@ -84,7 +83,9 @@ public class HTMLThrowableRenderer implements IThrowableRenderer<ILoggingEvent>
             sb.append("<br />").append(CoreConstants.CAUSED_BY);
         }
 		sb.append(tp.getClassName()).append(": ");
-		sb.append(Transform.escapeTags(tp.getMessage()).replace("\r\n", "<br />").replace("\n", "<br />"));
+		if (tp.getMessage() != null) {
+			TransformText.appendEscapedLines(sb, tp.getMessage());
+		}
         sb.append(CoreConstants.LINE_SEPARATOR);
     }
 
@@ -0,0 +1,160 @@
+package org.concordion.logback.html;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Style sheet and script used by the HTML log files.
+ *
+ * <p>These are either inlined into the header of each log file or written once to the output directory as minified files named
+ * after a hash of their content so that browsers and CI servers can cache them.</p>
+ *
+ * @author Andrew Sumner
+ */
+public final class HtmlLogAssets {
+	private static final String CSS_RESOURCE = "htmllog.css";
+	private static final String JS_RESOURCE = "htmllog.js";
+
+	/** Inline style sheet and script, including their &lt;style&gt; and &lt;script&gt; tags */
+	static final String INLINE_CSS = nullToEmpty(HTMLLayout.readFile(CSS_RESOURCE));
+	static final String INLINE_JS = nullToEmpty(HTMLLayout.readFile(JS_RESOURCE));
+
+	/** Minified content for the external files */
+	private static final String EXTERNAL_CSS = minify(stripTag(INLINE_CSS, "style"));
+	private static final String EXTERNAL_JS = minify(stripTag(INLINE_JS, "script"));
+
+	static final String CSS_FILENAME = "htmllog-" + hash(EXTERNAL_CSS) + ".css";
+	static final String JS_FILENAME = "htmllog-" + hash(EXTERNAL_JS) + ".js";
+
+	private static final ConcurrentMap<String, Boolean> WRITTEN = new ConcurrentHashMap<String, Boolean>();
+
+	private HtmlLogAssets() {
+	}
+
+	/**
+	 * Writes the external style sheet and script to the given folder if they have not already been written by this JVM.
+	 *
+	 * @param folder Folder to write the files to
+	 * @throws IOException if unable to write the files
+	 */
+	static void writeTo(File folder) throws IOException {
+		String key = folder.getAbsolutePath();
+
+		if (WRITTEN.containsKey(key)) {
+			return;
+		}
+
+		synchronized (WRITTEN) {
+			if (WRITTEN.containsKey(key)) {
+				return;
+			}
+
+			write(new File(folder, CSS_FILENAME), EXTERNAL_CSS);
+			write(new File(folder, JS_FILENAME), EXTERNAL_JS);
+
+			WRITTEN.put(key, Boolean.TRUE);
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		// Content hash is in the file name so an existing file will be identical
+		if (file.exists()) {
+			return;
+		}
+
+		File folder = file.getParentFile();
+		if (folder != null) {
+			folder.mkdirs();
+		}
+
+		File temp = File.createTempFile(file.getName(), ".tmp", folder);
+
+		try {
+			Files.write(temp.toPath(), content.getBytes(StandardCharsets.UTF_8));
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	private static String stripTag(String content, String tag) {
+		String start = "<" + tag;
+		String end = "</" + tag + ">";
+
+		int from = content.indexOf(start);
+		int to = content.lastIndexOf(end);
+
+		if (from < 0 || to < 0) {
+			return content;
+		}
+
+		from = content.indexOf('>', from) + 1;
+
+		return content.substring(from, to);
+	}
+
+	/**
+	 * A conservative minifier: removes block comments, whole line comments, indentation and blank lines.
+	 */
+	static String minify(String content) {
+		StringBuilder sb = new StringBuilder(content.length());
+		int length = content.length();
+		int pos = 0;
+
+		while (pos < length) {
+			int comment = content.indexOf("/*", pos);
+
+			if (comment < 0) {
+				sb.append(content, pos, length);
+				break;
+			}
+
+			sb.append(content, pos, comment);
+
+			int commentEnd = content.indexOf("*/", comment + 2);
+			pos = commentEnd < 0 ? length : commentEnd + 2;
+		}
+
+		String[] lines = sb.toString().split("\r?\n");
+		sb.setLength(0);
+
+		for (String line : lines) {
+			line = line.trim();
+
+			if (line.isEmpty() || line.startsWith("//")) {
+				continue;
+			}
+
+			sb.append(line).append('\n');
+		}
+
+		return sb.toString();
+	}
+
+	private static String hash(String content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 5; i++) {
+				sb.append(String.format("%02x", hash[i]));
+			}
+
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+}
@@ -2,14 +2,21 @@ package org.concordion.logback.html;
 
 /**
  * Utility class for transforming strings.
- * 
+ *
+ * <p>The append methods escape in a single pass directly into the supplied buffer, unchanged runs of characters
+ * are copied in bulk and no intermediate strings are created.</p>
+ *
  * @author Andrew Sumner
  */
 public class TransformText {
+	private static final String TAB = "&nbsp;&nbsp;&nbsp;&nbsp;";
+	private static final String LINE_BREAK = "<br />";
+	private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
 	/**
 	 * This method takes a String which may contain special characters (ie, \t, \r, \n)
 	 * and replaces these with the appropriate html tags
-	 * 
+	 *
 	 * @param input
 	 *            The text to be converted.
 	 * @return The converted value
@@ -18,31 +25,151 @@ public class TransformText {
 		if (input == null || input.length() == 0) {
 			return input;
 		}
-		StringBuffer buf = new StringBuffer(input);
-		return escapeText(buf);
+
+		StringBuilder buf = new StringBuilder(input.length() + 16);
+		append(buf, input, false, true, true);
+		return buf.toString();
 	}
 
 	/**
 	 * This method takes a StringBuilder which may contain special characters (ie, \t, \r, \n)
 	 * and replaces these with the appropriate html tags.
-	 * 
+	 *
 	 * @param buf StringBuffer to transform
 	 * @return The converted value
 	 */
 	public static String escapeText(final StringBuffer buf) {
-		for (int i = 0; i < buf.length(); i++) {
-			char ch = buf.charAt(i);
+		String result = escapeText(buf.toString());
+
+		buf.setLength(0);
+		buf.append(result);
+
+		return result;
+	}
+
+	/**
+	 * Escapes characters that have special meaning in HTML (&amp;, &lt;, &gt;, &quot; and &#39;).
+	 *
+	 * @param input The text to be converted
+	 * @return The converted value
+	 */
+	public static String escapeTags(final String input) {
+		if (input == null || input.length() == 0) {
+			return input;
+		}
+
+		StringBuilder buf = new StringBuilder(input.length() + 16);
+		appendEscapedTags(buf, input);
+		return buf.toString();
+	}
+
+	/**
+	 * Appends the input to the buffer escaping characters that have special meaning in HTML.
+	 *
+	 * @param buf Buffer to append to
+	 * @param input The text to be appended
+	 */
+	public static void appendEscapedTags(StringBuilder buf, String input) {
+		append(buf, input, true, false, false);
+	}
+
+	/**
+	 * Appends the input to the buffer escaping characters that have special meaning in HTML, and
+	 * replacing new lines with line breaks.
+	 *
+	 * @param buf Buffer to append to
+	 * @param input The text to be appended
+	 */
+	public static void appendEscapedLines(StringBuilder buf, String input) {
+		append(buf, input, true, true, false);
+	}
+
+	/**
+	 * Appends the input to the buffer escaping characters that have special meaning in HTML, and
+	 * replacing new lines and tabs with their HTML equivalent.
+	 *
+	 * @param buf Buffer to append to
+	 * @param input The text to be appended
+	 */
+	public static void appendEscapedText(StringBuilder buf, String input) {
+		append(buf, input, true, true, true);
+	}
+
+	private static void append(StringBuilder buf, String input, boolean tags, boolean lines, boolean tabs) {
+		if (input == null) {
+			buf.append((String) null);
+			return;
+		}
+
+		int length = input.length();
+		int start = 0;
+
+		for (int i = 0; i < length; i++) {
+			char ch = input.charAt(i);
+			String replacement = null;
+
 			switch (ch) {
 			case '\t':
-				buf.replace(i, i + 1, "&nbsp;&nbsp;&nbsp;&nbsp;");
+				if (tabs) {
+					replacement = TAB;
+				}
 				break;
+
+			case '\r':
+				// Left as is, as Transform.escapeTags does
+				break;
+
 			case '\n':
-				buf.replace(i, i + 1, "<br />");
+				if (lines) {
+					replacement = LINE_BREAK;
+				}
+				break;
+
+			case '&':
+				if (tags) {
+					replacement = "&amp;";
+				}
+				break;
+
+			case '<':
+				if (tags) {
+					replacement = "&lt;";
+				}
+				break;
+
+			case '>':
+				if (tags) {
+					replacement = "&gt;";
+				}
+				break;
+
+			case '"':
+				if (tags) {
+					replacement = "&quot;";
+				}
+				break;
+
+			case '\'':
+				if (tags) {
+					replacement = "&#39;";
+				}
 				break;
+
+			default:
+				if (tags && ch < ' ') {
+					// Not allowed in XML, mirror logback and use the object replacement character
+					buf.append(input, start, i).append(REPLACEMENT_CHARACTER);
+					start = i + 1;
+				}
+				break;
+			}
+
+			if (replacement != null) {
+				buf.append(input, start, i).append(replacement);
+				start = i + 1;
 			}
 		}
 
-		return buf.toString();
+		buf.append(input, start, length);
 	}
-
 }
@@ -1,13 +1,17 @@
 package org.concordion.slf4j.ext;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.Iterator;
 
+import org.concordion.ext.AttachmentWriter;
 import org.concordion.ext.ScreenshotTaker;
 import org.concordion.slf4j.ILoggingAdaptor;
 import org.concordion.slf4j.markers.AttachmentMarker;
-import org.concordion.slf4j.markers.BaseDataMarker;
 import org.concordion.slf4j.markers.DataMarker;
 import org.concordion.slf4j.markers.HtmlMarker;
 import org.concordion.slf4j.markers.HtmlMessageMarker;
@@ -65,6 +69,15 @@ public class FluentLogger {
 	public static void removeScreenshotTaker() {
 		screenshotTakers.remove();
 	}
+
+	/**
+	 * Captures the logging context of the current test so that it can be carried over to other threads, see {@link LoggingContext}.
+	 * 
+	 * @return The logging context of the current thread
+	 */
+	public static LoggingContext captureContext() {
+		return LoggingContext.capture();
+	}
 	
 	public FluentLogger(Logger logger, boolean instanceofLAL) {
 		this(logger, instanceofLAL, false);
@@ -166,23 +179,89 @@ public class FluentLogger {
 //	}
 
 	public FluentLogger attachment(String input, String filename, MediaType mediaType) {
-		return attachment(new ByteArrayInputStream(input.getBytes()), filename, mediaType.toString());
+		return attachment(input, filename, mediaType.toString());
+	}
+
+	/**
+	 * Attaches the string, encoded as UTF-8.
+	 */
+	public FluentLogger attachment(final String input, String filename, String mediaType) {
+		return attachment(filename, mediaType, new AttachmentWriter() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
+				writer.write(input);
+				writer.flush();
+			}
+		});
+	}
+
+	public FluentLogger attachment(String filename, MediaType mediaType, AttachmentWriter writer) {
+		return attachment(filename, mediaType.toString(), writer);
 	}
 
-	public FluentLogger attachment(String input, String filename, String mediaType) {
-		return attachment(new ByteArrayInputStream(input.getBytes()), filename, mediaType);
+	/**
+	 * Attaches content written by the caller directly into the attachment file, eg from a JSON generator or CSV exporter,
+	 * so the content never has to be held in memory.
+	 * 
+	 * @param filename Name to give the attachment
+	 * @param mediaType Media type of the content
+	 * @param writer Called once, when the log statement is written, to stream the content into the attachment
+	 * @return A self reference
+	 */
+	public FluentLogger attachment(String filename, String mediaType, AttachmentWriter writer) {
+		addMarker(new AttachmentMarker(getLoggingAdaptor().getLogFile().getPath(), writer, filename, mediaType));
+
+		return this;
 	}
 
 	public FluentLogger attachment(InputStream inputStream, String filename, MediaType mediaType) {
 		return attachment(inputStream, filename, mediaType.toString());
 	}
 	
+	/**
+	 * Attaches the content of the stream, which is read when the log statement is written.
+	 * 
+	 * @param inputStream Content of the attachment, this is closed by the logger once read, or once the statement has been
+	 * 			logged if nothing wrote it.  Use a {@link org.concordion.logback.FlushableAsyncAppender} for asynchronous logging
+	 * 			as it reads the stream before the statement leaves the logging thread
+	 * @param filename Name to give the attachment
+	 * @param mediaType Media type of the content
+	 * @return A self reference
+	 */
 	public FluentLogger attachment(InputStream inputStream, String filename, String mediaType) {
 		addMarker(new AttachmentMarker(getLoggingAdaptor().getLogFile().getPath(), inputStream, filename, mediaType.toString()));
 
 		return this;
 	}
 
+	public FluentLogger attachment(Path file, String filename, MediaType mediaType) {
+		return attachment(file, filename, mediaType.toString(), false);
+	}
+
+	public FluentLogger attachment(Path file, String filename, String mediaType) {
+		return attachment(file, filename, mediaType, false);
+	}
+
+	public FluentLogger attachment(Path file, String filename, MediaType mediaType, boolean hardLink) {
+		return attachment(file, filename, mediaType.toString(), hardLink);
+	}
+
+	/**
+	 * Attaches a file without reading it into memory, suitable for large files such as HAR files or database dumps.
+	 * 
+	 * @param file File to attach, this must not be removed until the log statement has been written
+	 * @param filename Name to give the attachment
+	 * @param mediaType Media type of the file
+	 * @param hardLink Hard link to the file rather than copy it if the file system allows, the file must then be left unchanged
+	 * @return A self reference
+	 */
+	public FluentLogger attachment(Path file, String filename, String mediaType, boolean hardLink) {
+		addMarker(new AttachmentMarker(getLoggingAdaptor().getLogFile().getPath(), file, filename, mediaType, hardLink));
+
+		return this;
+	}
+
 	public FluentLogger marker(Marker marker) {
 		addMarker(marker);
 		return this;
@@ -210,6 +289,7 @@ public class FluentLogger {
 		}
 		
 		if (!logger.isTraceEnabled(marker)) {
+			closeUnwrittenAttachments(marker);
 			return;
 		}
 
@@ -231,6 +311,7 @@ public class FluentLogger {
 		}
 		
 		if (!logger.isDebugEnabled(marker)) {
+			closeUnwrittenAttachments(marker);
 			return;
 		}
 
@@ -252,6 +333,7 @@ public class FluentLogger {
 		}
 		
 		if (!logger.isInfoEnabled(marker)) {
+			closeUnwrittenAttachments(marker);
 			return;
 		}
 
@@ -273,6 +355,7 @@ public class FluentLogger {
 		}
 		
 		if (!logger.isWarnEnabled(marker)) {
+			closeUnwrittenAttachments(marker);
 			return;
 		}
 
@@ -299,6 +382,7 @@ public class FluentLogger {
 		}
 		
 		if (!logger.isErrorEnabled(marker)) {
+			closeUnwrittenAttachments(marker);
 			return;
 		}
 
@@ -384,28 +468,42 @@ public class FluentLogger {
 			addMarker(ReportLoggerMarkers.PROGRESS_MARKER);
 		}
 
-		try {
-			prepareData(marker);
-		} catch (Exception e) {
-			throw new RuntimeException("Unable to prepare log attachments: " + e.getMessage(), e);
-		}
+		// Screenshots and attachments are prepared on demand by the first appender that renders them, see BaseDataMarker.prepare()
+		formatHtmlMessages(marker);
 	}
 
-	private void prepareData(Marker reference) throws Exception {
+	private void formatHtmlMessages(Marker reference) {
 
 		if (reference == null) {
 			return;
 		}
 
-		if (reference instanceof BaseDataMarker) {
-			((BaseDataMarker<?>) reference).prepareData();
+		if (reference instanceof HtmlMessageMarker) {
+			// Format now in case the arguments change before an asynchronous appender gets to it
+			((HtmlMessageMarker) reference).getFormattedMessage();
 		}
 
-		// TODO This takes screenshots and writes data to files, this probably should be done in HTMLLayout
-		// so the effort is not wasted if it's not going to be used.
 		Iterator<Marker> references = reference.iterator();
 		while (references.hasNext()) {
-			prepareData(references.next());
+			formatHtmlMessages(references.next());
+		}
+	}
+
+	/**
+	 * Appenders write attachments while the statement is being logged, so close the streams of any that weren't written.
+	 */
+	private void closeUnwrittenAttachments(Marker reference) {
+		if (reference == null) {
+			return;
+		}
+
+		if (reference instanceof AttachmentMarker) {
+			((AttachmentMarker) reference).closeUnwritten();
+		}
+
+		Iterator<Marker> references = reference.iterator();
+		while (references.hasNext()) {
+			closeUnwrittenAttachments(references.next());
 		}
 	}
 
@@ -414,6 +512,8 @@ public class FluentLogger {
 	}
 
 	private void reset() {
+		closeUnwrittenAttachments(marker);
+
 		this.overrideFQCN = null;
 		this.marker = null;
 		this.format = null;
@@ -0,0 +1,241 @@
+package org.concordion.slf4j.ext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.concordion.ext.ScreenshotTaker;
+import org.concordion.slf4j.ILoggingAdaptor;
+import org.slf4j.MDC;
+
+/**
+ * A snapshot of the logging context of the current test: the MDC values that direct log statements to the test's log file
+ * along with the logging adaptor and screenshot taker used by {@link FluentLogger}.
+ *
+ * <p>Use this to carry the context over to work that the test hands to other threads, eg:</p>
+ *
+ * <pre>
+ * LoggingContext context = FluentLogger.captureContext();
+ * ExecutorService executor = context.wrap(Executors.newFixedThreadPool(4));
+ *
+ * CompletableFuture.supplyAsync(context.wrapSupplier(supplier), executor);
+ * </pre>
+ *
+ * <p>Suppliers, functions and consumers have their own wrap methods as lambdas would otherwise be ambiguous.</p>
+ *
+ * <p>The context is applied for the duration of each task only and the thread's previous context restored afterwards, so this
+ * works with pooled and virtual threads alike.  Events logged by the worker threads still carry their own thread name,
+ * add %thread to the layout pattern to show it.</p>
+ *
+ * @author Andrew Sumner
+ */
+public final class LoggingContext {
+	private final Map<String, String> mdc;
+	private final ILoggingAdaptor loggingAdaptor;
+	private final ScreenshotTaker screenshotTaker;
+
+	private LoggingContext(Map<String, String> mdc, ILoggingAdaptor loggingAdaptor, ScreenshotTaker screenshotTaker) {
+		this.mdc = mdc;
+		this.loggingAdaptor = loggingAdaptor;
+		this.screenshotTaker = screenshotTaker;
+	}
+
+	/**
+	 * @return The logging context of the current thread
+	 */
+	public static LoggingContext capture() {
+		return new LoggingContext(MDC.getCopyOfContextMap(), FluentLogger.getLoggingAdaptor(), FluentLogger.getScreenshotTaker());
+	}
+
+	/**
+	 * Applies this context to the current thread.
+	 *
+	 * @return The context that was replaced, pass this to {@link #restore(LoggingContext)} once finished
+	 */
+	public LoggingContext apply() {
+		LoggingContext previous = capture();
+
+		set(this);
+
+		return previous;
+	}
+
+	/**
+	 * Restores the context that was replaced by {@link #apply()}.
+	 *
+	 * @param previous Value returned from apply()
+	 */
+	public static void restore(LoggingContext previous) {
+		set(previous);
+	}
+
+	private static void set(LoggingContext context) {
+		if (context.mdc == null || context.mdc.isEmpty()) {
+			MDC.clear();
+		} else {
+			MDC.setContextMap(context.mdc);
+		}
+
+		if (context.loggingAdaptor == null) {
+			FluentLogger.removeLoggingAdaptor();
+		} else {
+			FluentLogger.addLoggingAdaptor(context.loggingAdaptor);
+		}
+
+		if (context.screenshotTaker == null) {
+			FluentLogger.removeScreenshotTaker();
+		} else {
+			FluentLogger.addScreenshotTaker(context.screenshotTaker);
+		}
+	}
+
+	public Runnable wrap(final Runnable task) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				LoggingContext previous = apply();
+
+				try {
+					task.run();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	public <T> Callable<T> wrap(final Callable<T> task) {
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				LoggingContext previous = apply();
+
+				try {
+					return task.call();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * For CompletableFuture.supplyAsync().
+	 */
+	public <T> Supplier<T> wrapSupplier(final Supplier<T> supplier) {
+		return new Supplier<T>() {
+			@Override
+			public T get() {
+				LoggingContext previous = apply();
+
+				try {
+					return supplier.get();
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * For CompletableFuture.thenApply() and similar stages.
+	 */
+	public <T, R> Function<T, R> wrapFunction(final Function<T, R> function) {
+		return new Function<T, R>() {
+			@Override
+			public R apply(T value) {
+				LoggingContext previous = LoggingContext.this.apply();
+
+				try {
+					return function.apply(value);
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * For CompletableFuture.thenAccept() and similar stages.
+	 */
+	public <T> Consumer<T> wrapConsumer(final Consumer<T> consumer) {
+		return new Consumer<T>() {
+			@Override
+			public void accept(T value) {
+				LoggingContext previous = apply();
+
+				try {
+					consumer.accept(value);
+				} finally {
+					restore(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return An executor that runs every task in this context, also suitable for the async methods of CompletableFuture
+	 */
+	public Executor wrap(final Executor executor) {
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				executor.execute(wrap(command));
+			}
+		};
+	}
+
+	/**
+	 * @return An executor service that runs every task in this context, shutting it down shuts down the wrapped executor service
+	 */
+	public ExecutorService wrap(ExecutorService executor) {
+		return new ContextExecutorService(this, executor);
+	}
+
+	private static final class ContextExecutorService extends AbstractExecutorService {
+		private final LoggingContext context;
+		private final ExecutorService executor;
+
+		ContextExecutorService(LoggingContext context, ExecutorService executor) {
+			this.context = context;
+			this.executor = executor;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			executor.execute(context.wrap(command));
+		}
+
+		@Override
+		public void shutdown() {
+			executor.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return executor.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return executor.awaitTermination(timeout, unit);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package org.concordion.slf4j.markers;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the files, such as screenshots and attachments, written alongside each log file.
+ *
+ * <p>Entries are keyed by the path of the log file so every thread writing to a log file shares the same numbering, and
+ * are released when the test that owns the log file finishes.  Files still being written in the background, such as
+ * thumbnails, are waited on when the entry is released so the log is complete once the test has finished.  Background
+ * work for a log file that has already been released is waited on by the thread that queued it, until the log file is
+ * reopened by a test starting it again.</p>
+ *
+ * <p>Released entries are kept, at the cost of a few bytes per log file, as file numbers must not be reset.  A test that
+ * runs again in the same JVM can be appending to the same log file, which still refers to the files from the earlier run.
+ * Content logged before a test has a log file has nowhere to be released from, so it is numbered from a shared counter and
+ * not tracked.</p>
+ *
+ * @author Andrew Sumner
+ */
+public final class ArtifactRegistry {
+	private static final ConcurrentMap<String, Entry> ENTRIES = new ConcurrentHashMap<String, Entry>();
+	private static final AtomicInteger UNREGISTERED_FILE_NUMBER = new AtomicInteger();
+	private static final long PENDING_TIMEOUT = 30000;
+
+	private ArtifactRegistry() {
+	}
+
+	/**
+	 * @param logFile Path of the log file
+	 * @return The next number to use for a file belonging to the log file, starting from 0
+	 */
+	public static int nextFileNumber(String logFile) {
+		if (isUnregistered(logFile)) {
+			return UNREGISTERED_FILE_NUMBER.getAndIncrement();
+		}
+
+		return getEntry(logFile).fileNumber.getAndIncrement();
+	}
+
+	/**
+	 * @param logFile Path of the log file
+	 * @param filename Name of the file
+	 * @return The next numbered file alongside the log file, eg "specLog3-data.txt" for the log file "specLog.html"
+	 */
+	public static File nextFile(String logFile, String filename) {
+		int pos = logFile.lastIndexOf('.');
+		String baseFile = pos > 0 ? logFile.substring(0, pos) : logFile;
+
+		return new File(String.format("%s%s-%s", baseFile, nextFileNumber(logFile), filename));
+	}
+
+	/**
+	 * Records a file being written in the background for the log file.  If the log file has already been released, waits up
+	 * to 30 seconds for the file to be written as nothing else will.
+	 *
+	 * @param logFile Path of the log file
+	 * @param task Task writing the file
+	 */
+	public static void addPending(String logFile, Future<?> task) {
+		Entry entry = getEntry(logFile);
+
+		synchronized (entry) {
+			if (!entry.released) {
+				entry.pending.add(task);
+				pruneCompleted(entry);
+				return;
+			}
+		}
+
+		await(task, System.currentTimeMillis() + PENDING_TIMEOUT);
+	}
+
+	private static void pruneCompleted(Entry entry) {
+		// Don't let a long running test accumulate completed tasks
+		if (entry.pending.size() > 64) {
+			for (Future<?> pending : entry.pending) {
+				if (pending.isDone()) {
+					entry.pending.remove(pending);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets everything known about a log file, apart from its file numbers, called once nothing more will be written to it.
+	 * Waits up to 30 seconds for any files still being written in the background.
+	 *
+	 * @param logFile Path of the log file
+	 */
+	public static void release(String logFile) {
+		Entry entry = ENTRIES.get(logFile);
+
+		if (entry == null) {
+			return;
+		}
+
+		synchronized (entry) {
+			entry.released = true;
+			entry.lastScreenshot = null;
+		}
+
+		awaitPending(entry);
+	}
+
+	/**
+	 * Lets files be written in the background again for a log file that was released, called when a test starts a log file
+	 * that an earlier test in the same JVM may have used.
+	 *
+	 * @param logFile Path of the log file
+	 */
+	public static void reopen(String logFile) {
+		Entry entry = ENTRIES.get(logFile);
+
+		if (entry == null) {
+			return;
+		}
+
+		synchronized (entry) {
+			entry.released = false;
+			entry.lastScreenshot = null;
+		}
+	}
+
+	private static void awaitPending(Entry entry) {
+		long deadline = System.currentTimeMillis() + PENDING_TIMEOUT;
+		Future<?> task;
+
+		// Nothing can be added once released
+		while ((task = entry.pending.poll()) != null) {
+			if (!await(task, deadline)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return false if gave up waiting
+	 */
+	private static boolean await(Future<?> task, long deadline) {
+		try {
+			task.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			// Tasks report the failures they expect, this is anything they didn't
+			Background.reportError(ArtifactRegistry.class, "Background task for log file failed", e.getCause());
+		} catch (TimeoutException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	static Entry getEntry(String logFile) {
+		if (isUnregistered(logFile)) {
+			// Not shared between tests, nor kept as it would never be released
+			return new Entry();
+		}
+
+		Entry entry = ENTRIES.get(logFile);
+
+		if (entry == null) {
+			Entry created = new Entry();
+			entry = ENTRIES.putIfAbsent(logFile, created);
+
+			if (entry == null) {
+				entry = created;
+			}
+		}
+
+		return entry;
+	}
+
+	private static boolean isUnregistered(String logFile) {
+		return logFile == null || logFile.isEmpty();
+	}
+
+	static final class Entry {
+		private final AtomicInteger fileNumber = new AtomicInteger();
+		private final Queue<Future<?>> pending = new ConcurrentLinkedQueue<Future<?>>();
+		private boolean released = false;
+		// Guarded by the entry
+		ScreenshotMarker.Capture lastScreenshot = null;
+	}
+}
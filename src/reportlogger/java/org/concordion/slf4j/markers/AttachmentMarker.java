@@ -2,70 +2,156 @@ package org.concordion.slf4j.markers;
 
 import static ch.qos.logback.core.CoreConstants.LINE_SEPARATOR;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
-import org.slf4j.MDC;
+import org.concordion.ext.AttachmentWriter;
 
 public class AttachmentMarker extends BaseDataMarker<AttachmentMarker> {
 	private static final long serialVersionUID = 5412731321120168078L;
-	private static final String NEXT_FILE_NUMBER = "NEXT_FILE_NUMBER";
 
 	private final String logFile;
-	private final InputStream stream;
 	private final String filename;
 	private final String type;
 	
+	// Released once written so the marker holds no live resources when rendered, possibly by another thread
+	private volatile InputStream stream;
+	private volatile Path source;
+	private volatile AttachmentWriter writer;
+	private final boolean link;
+	private volatile File file;
+	
+	/**
+	 * Attaches the content of a stream.  The marker takes ownership of the stream and closes it once it has been copied
+	 * into the attachment, or by {@link #closeUnwritten()} if the log statement is never written.
+	 * 
+	 * @param logFile Log file the attachment belongs to
+	 * @param stream Content of the attachment
+	 * @param filename Name to give the attachment
+	 * @param type Media type of the content
+	 */
 	public AttachmentMarker(String logFile, InputStream stream, String filename, String type) {
 		super("");
 
 		this.logFile = logFile;
 		this.stream = stream;
+		this.source = null;
+		this.writer = null;
+		this.link = false;
+		this.filename = filename;
+		this.type = type;
+	}
+
+	/**
+	 * Attaches an existing file, which is copied into the log folder by the file system without passing through the heap.
+	 * 
+	 * @param logFile Log file the attachment belongs to
+	 * @param source File to attach
+	 * @param filename Name to give the attachment
+	 * @param type Media type of the file
+	 * @param link Hard link to the file rather than copy it where the file system allows, the attachment will then reflect
+	 *            any later changes to the source file
+	 */
+	public AttachmentMarker(String logFile, Path source, String filename, String type, boolean link) {
+		super("");
+
+		this.logFile = logFile;
+		this.stream = null;
+		this.source = source;
+		this.writer = null;
+		this.link = link;
+		this.filename = filename;
+		this.type = type;
+	}
+
+	/**
+	 * Attaches content that is streamed straight into the attachment file by the writer.
+	 * 
+	 * @param logFile Log file the attachment belongs to
+	 * @param writer Writes the content of the attachment
+	 * @param filename Name to give the attachment
+	 * @param type Media type of the content
+	 */
+	public AttachmentMarker(String logFile, AttachmentWriter writer, String filename, String type) {
+		super("");
+
+		this.logFile = logFile;
+		this.stream = null;
+		this.source = null;
+		this.writer = writer;
+		this.link = false;
 		this.filename = filename;
 		this.type = type;
 	}
 
 	public String getFile() {
+		prepareIfRequired();
+		
 		return data;
 	}
 
 	@Override
 	public String getFormattedData() {
+		return getFormattedData(InlinePolicy.UNLIMITED);
+	}
+
+	/**
+	 * The attachment is already a file of its own so large text attachments only need their preview limiting.
+	 */
+	@Override
+	public String getFormattedData(InlinePolicy policy) {
+		prepareIfRequired();
+		
 		StringBuilder buf = new StringBuilder();
 
-		buf.append("<div class=\"attachmentMenu\">").append(LINE_SEPARATOR);
-		buf.append("<a href=\"").append(data).append("\" target=\"_blank\">Open</a>&nbsp;&nbsp;").append(LINE_SEPARATOR);
-		buf.append("<a href=\"#\" onclick=\"toggleContent(this); return false;\">Expand</a>").append(LINE_SEPARATOR);
-		buf.append("</div>").append(LINE_SEPARATOR);
+		// XML files are not handled by the object tag, so use the XMP tag for this. Doing same for other text based files
+		// on the off-chance they have greater/less than characters
+		boolean useXMP = (type.contains("text") || type.contains("xml") || type.contains("json") || type.contains("javascript"));
+		boolean preview = useXMP && file != null && !policy.isInlined(file.length());
+
+		InlinePolicy.appendMenu(buf, data, preview);
 
 		buf.append("<div class=\"resizeable\">");
 		buf.append(LINE_SEPARATOR);
 
-		// XML files are not handled by the object tag, so use the XMP tag for this. Doing same for other text based files
-		// on the off-chance they have greater/less than characters
-		boolean useXMP = (type.contains("text") || type.contains("xml") || type.contains("json") || type.contains("javascript"));
 		if (useXMP) {
 			// The format of this needs to remain in sync with DataMarker
 			buf.append("<xmp class=\"fadeout\">");
 
+			Reader in = null;
+			
 			try {
-				stream.reset();
-
-				final char[] buffer = new char[1024];
-				Reader in = new InputStreamReader(stream, "UTF-8");
-				int len = in.read(buffer, 0, buffer.length);
-				while (len != -1) {
-					buf.append(buffer, 0, len);
-					len = in.read(buffer, 0, buffer.length);
+				if (file != null) {
+					// Read back the copy that was written to disk rather than holding the content in memory
+					in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+					
+					if (preview) {
+						buf.append(policy.readPreview(in));
+					} else {
+						final char[] buffer = new char[1024];
+						int len = in.read(buffer, 0, buffer.length);
+						while (len != -1) {
+							buf.append(buffer, 0, len);
+							len = in.read(buffer, 0, buffer.length);
+						}
+					}
 				}
 			} catch (IOException e) {
 				// Revert to using object tag
 				buf.append(e.getMessage());
+			} finally {
+				closeQuietly(in);
 			}
 
 			buf.append("</xmp>");
@@ -100,60 +186,176 @@ public class AttachmentMarker extends BaseDataMarker<AttachmentMarker> {
 
 	@Override
 	public void prepareData() throws IOException {
-		writeStream();
+		if (ContentStore.isEnabled()) {
+			writeToStore();
+		} else if (source != null) {
+			writeSource();
+		} else if (writer != null) {
+			writeContent();
+		} else {
+			writeStream();
+		}
 	}
 
 	public void writeStream() throws IOException {
-		int fileNumber = getNextFileNumber();
-		String baseFile = getBaseFilename();
-
+		if (stream == null) {
+			throw new IllegalStateException("Attachment " + filename + " has already been written, or was not written when it was logged");
+		}
+		
 		OutputStream outputStream = null;
-		File targetFile = new File(buildFileName(baseFile, fileNumber));
 
 		try {
+			File targetFile = nextTargetFile();
 			outputStream = new FileOutputStream(targetFile);
 			
-			byte[] buffer = new byte[1024];
-			int len = stream.read(buffer);
-			while (len != -1) {
-				outputStream.write(buffer, 0, len);
-			    len = stream.read(buffer);
-			}
+			copy(stream, outputStream);
 			
+			this.file = targetFile;
 			this.data = targetFile.getName();
 		} finally {
-			if (outputStream != null) {
-				outputStream.close();
+			try {
+				if (outputStream != null) {
+					outputStream.close();
+				}
+			} finally {
+				closeStream();
+			}
+		}
+	}
+
+	/**
+	 * Closes the stream if the attachment has not been written, called once the log statement has been logged as no
+	 * appender will write it after that.
+	 */
+	public synchronized void closeUnwritten() {
+		if (!isPrepared()) {
+			closeStream();
+		}
+	}
+
+	private void closeStream() {
+		InputStream unwritten = stream;
+		stream = null;
+
+		if (unwritten != null) {
+			try {
+				unwritten.close();
+			} catch (IOException e) {
+				// Ignore
 			}
 		}
 	}
 
-	private int getNextFileNumber() {
-		int nextNumber = -1;
-		String next = MDC.get(NEXT_FILE_NUMBER);
+	private void writeToStore() throws IOException {
+		final InputStream stream = this.stream;
+		final Path source = this.source;
+		final AttachmentWriter writer = this.writer;
 
-		if (next != null && !next.isEmpty()) {
-			nextNumber = Integer.valueOf(next);
+		if (source == null && writer == null && stream == null) {
+			throw new IllegalStateException("Attachment " + filename + " has already been written, or was not written when it was logged");
 		}
 
-		nextNumber++;
-		
-		MDC.put(NEXT_FILE_NUMBER, String.valueOf(nextNumber));
+		File stored;
+
+		try {
+			stored = ContentStore.store(logFile, getExtension(), new AttachmentWriter() {
+				@Override
+				public void writeTo(OutputStream outputStream) throws IOException {
+					if (source != null) {
+						Files.copy(source, outputStream);
+					} else if (writer != null) {
+						writer.writeTo(outputStream);
+					} else {
+						copy(stream, outputStream);
+					}
+				}
+			});
+		} finally {
+			closeStream();
+		}
 
-		return nextNumber;
+		this.file = stored;
+		this.data = ContentStore.relativePath(logFile, stored);
+		this.source = null;
+		this.writer = null;
 	}
 
-	private String getBaseFilename() {
-		int pos = logFile.lastIndexOf('.');
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		int len = in.read(buffer);
+		while (len != -1) {
+			out.write(buffer, 0, len);
+			len = in.read(buffer);
+		}
+	}
 
-		if (pos > 0) {
-			return logFile.substring(0, pos);
-		} else {
-			return logFile;
+	private String getExtension() {
+		int pos = filename.lastIndexOf('.');
+
+		return pos >= 0 ? filename.substring(pos + 1) : "";
+	}
+
+	private void writeContent() throws IOException {
+		File targetFile = nextTargetFile();
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(targetFile));
+
+		try {
+			writer.writeTo(outputStream);
+		} finally {
+			outputStream.close();
+		}
+
+		this.file = targetFile;
+		this.data = targetFile.getName();
+		this.writer = null;
+	}
+
+	private void writeSource() throws IOException {
+		Path target = nextTargetFile().toPath();
+		boolean linked = false;
+
+		if (link) {
+			try {
+				Files.createLink(target, source);
+				linked = true;
+			} catch (UnsupportedOperationException e) {
+				// Links not supported by this file system
+			} catch (FileSystemException e) {
+				// Most likely on a different device to the log folder
+			}
+		}
+
+		if (!linked) {
+			Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
 		}
+
+		this.file = target.toFile();
+		this.data = file.getName();
+		this.source = null;
+	}
+
+	/**
+	 * Files are numbered per log file and so get reused by the next run, remove any left over file rather than write into it
+	 * as it may be a hard link to a file we don't own.
+	 */
+	private File nextTargetFile() throws IOException {
+		File targetFile = ArtifactRegistry.nextFile(logFile, filename);
+
+		Files.deleteIfExists(targetFile.toPath());
+
+		return targetFile;
 	}
 
-	private String buildFileName(String baseFile, int index) {
-		return String.format("%s%s-%s", baseFile, index, filename);
+	private void closeQuietly(Reader reader) {
+		if (reader == null) {
+			return;
+		}
+		
+		try {
+			reader.close();
+		} catch (IOException e) {
+			// Ignore
+		}
 	}
+
 }
\ No newline at end of file
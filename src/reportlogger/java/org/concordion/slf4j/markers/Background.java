@@ -0,0 +1,83 @@
+package org.concordion.slf4j.markers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.status.ErrorStatus;
+
+/**
+ * Thread pools for the work markers do in the background, and reporting failures of that work as the thread that logged
+ * the marker has moved on.  Pool threads are daemon threads so they never keep the JVM alive.
+ */
+final class Background {
+
+	private Background() {
+	}
+
+	/**
+	 * @param threadName Prefix for the names of the threads
+	 * @param queueSize Number of tasks that can be waiting for a thread
+	 * @param rejectedHandler Handles tasks submitted once the queue is full, or null to throw RejectedExecutionException
+	 * @return A pool of a few threads, depending on the number of processors, that stop when idle
+	 */
+	static ThreadPoolExecutor newFixedPool(String threadName, int queueSize, RejectedExecutionHandler rejectedHandler) {
+		int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), daemonThreads(threadName));
+
+		if (rejectedHandler != null) {
+			executor.setRejectedExecutionHandler(rejectedHandler);
+		}
+
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	/**
+	 * @param threadName Prefix for the names of the threads
+	 * @param maxThreads Maximum number of threads, tasks submitted while they are all busy are rejected
+	 * @return A pool that starts a thread for each task unless an idle thread is available
+	 */
+	static ThreadPoolExecutor newCachedPool(String threadName, int maxThreads) {
+		return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), daemonThreads(threadName));
+	}
+
+	/**
+	 * Adds an error to the status of the logback context, where it is shown by a StatusListener or when logback is
+	 * configured with debug="true".
+	 *
+	 * @param origin Object reporting the error
+	 * @param message Description of what failed
+	 * @param e Cause of the failure
+	 */
+	static void reportError(Object origin, String message, Throwable e) {
+		ILoggerFactory factory = LoggerFactory.getILoggerFactory();
+
+		if (factory instanceof Context) {
+			((Context) factory).getStatusManager().add(new ErrorStatus(message, origin, e));
+		}
+	}
+
+	private static ThreadFactory daemonThreads(final String threadName) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -1,12 +1,22 @@
 package org.concordion.slf4j.markers;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
 import org.slf4j.Marker;
 import org.slf4j.helpers.ConcordionMarker;
 
 public abstract class BaseDataMarker<T> extends ConcordionMarker {
 	private static final long serialVersionUID = 8750307001902436743L;
 
-	protected String data;
+	protected volatile String data;
+	private volatile boolean prepared = false;
+	private volatile Exception failure = null;
+	private File spilled = null;
 
 	public BaseDataMarker(String data) {
 		super(ReportLoggerMarkers.DATA_MARKER_NAME);
@@ -16,8 +26,99 @@ public abstract class BaseDataMarker<T> extends ConcordionMarker {
 
 	public abstract String getFormattedData();
 
+	/**
+	 * Formats the data for the HTML log, where content too large to inline in full is previewed and linked to instead.
+	 * 
+	 * @param policy Decides how much content may be inlined
+	 * @return The formatted data
+	 * @throws Exception if unable to write the content to a file of its own
+	 */
+	public String getFormattedData(InlinePolicy policy) throws Exception {
+		return getFormattedData();
+	}
+
+	/**
+	 * Called once by {@link #prepare()} to take the screenshot, write the attachment, etc.
+	 * 
+	 * @throws Exception if unable to prepare the data
+	 */
 	public abstract void prepareData() throws Exception;
 
+	/**
+	 * Prepares the data for logging. This is left until an appender or listener needs the data so that no screenshots
+	 * are taken or files written if nothing is going to use them.
+	 * 
+	 * <p>Only the first call does any work, after that the marker is an immutable snapshot that may be safely rendered by
+	 * another thread, eg by an AsyncAppender. A failure is also remembered and rethrown by later calls.</p>
+	 * 
+	 * @throws Exception if unable to prepare the data
+	 */
+	public final void prepare() throws Exception {
+		if (prepared) {
+			return;
+		}
+		
+		synchronized (this) {
+			if (prepared) {
+				return;
+			}
+			
+			if (failure != null) {
+				throw failure;
+			}
+			
+			try {
+				prepareData();
+				prepared = true;
+			} catch (Exception e) {
+				failure = e;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * For use by accessors that return prepared data.
+	 */
+	protected void prepareIfRequired() {
+		try {
+			prepare();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to prepare " + getClass().getSimpleName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes the data to a file alongside the log file for content too large to inline, only the first call writes the file.
+	 * 
+	 * @param policy Policy that decided the data is too large to inline
+	 * @param filename Name of the file
+	 * @return The file the data was written to
+	 * @throws IOException if unable to write the file
+	 */
+	protected synchronized File spill(InlinePolicy policy, String filename) throws IOException {
+		if (spilled == null) {
+			File file = policy.newFile(filename);
+			Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+
+			try {
+				out.write(data);
+			} finally {
+				out.close();
+			}
+
+			spilled = file;
+		}
+
+		return spilled;
+	}
+
+	public boolean isPrepared() {
+		return prepared;
+	}
+
 	@SuppressWarnings("unchecked")
 	public T withMarker(Marker marker) {
 		this.add(marker);
@@ -25,6 +126,8 @@ public abstract class BaseDataMarker<T> extends ConcordionMarker {
 	}
 
 	public boolean hasData() {
+		prepareIfRequired();
+		
 		return data != null && !data.isEmpty();
 	}
 }
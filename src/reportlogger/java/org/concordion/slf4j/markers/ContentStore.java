@@ -0,0 +1,124 @@
+package org.concordion.slf4j.markers;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+import org.concordion.ext.AttachmentWriter;
+import org.concordion.logback.LogbackAdaptor;
+
+/**
+ * An optional store for screenshots and attachments where each file is named after a hash of its content, so content
+ * that is logged many times, such as the same screenshot of a login page, is only written to disk once.
+ *
+ * <p>The store is the "artifacts" folder of the Concordion output folder, or of the log file's folder for log files
+ * outside of it.  It is disabled by default, enable it by calling {@link #setEnabled(boolean)} or setting the system
+ * property {@value #ENABLED_PROPERTY} to true.</p>
+ *
+ * <p>Content is hashed as it is written to a temporary file which is then moved into place, so threads storing the same
+ * content at the same time are safe and the store never contains a partially written file.</p>
+ *
+ * @author Andrew Sumner
+ */
+public final class ContentStore {
+	public static final String ENABLED_PROPERTY = "reportlogger.contentstore";
+	static final String FOLDER_NAME = "artifacts";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	private ContentStore() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+	/**
+	 * Stores the content unless identical content has already been stored.
+	 *
+	 * @param logFile Path of the log file the content belongs to
+	 * @param extension File extension for the content, eg "png", may be empty
+	 * @param writer Writes the content
+	 * @return The stored file
+	 * @throws IOException if unable to store the content
+	 */
+	public static File store(String logFile, String extension, AttachmentWriter writer) throws IOException {
+		Path folder = getFolder(logFile);
+		Files.createDirectories(folder);
+
+		Path temp = Files.createTempFile(folder, "pending", ".tmp");
+
+		try {
+			MessageDigest digest = Digests.newDigest();
+			OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), digest);
+
+			try {
+				writer.writeTo(out);
+			} finally {
+				out.close();
+			}
+
+			Path target = folder.resolve(toHex(digest.digest()) + (extension == null || extension.isEmpty() ? "" : "." + extension));
+
+			if (!Files.exists(target)) {
+				try {
+					Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					// Fine if another thread has just stored the same content
+					if (!Files.exists(target)) {
+						throw e;
+					}
+				}
+			}
+
+			return target.toFile();
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * @param logFile Path of the log file
+	 * @param stored File returned by {@link #store(String, String, AttachmentWriter)}
+	 * @return The location of the stored file relative to the log file, for use in links
+	 */
+	public static String relativePath(String logFile, File stored) {
+		Path logFolder = new File(logFile).getAbsoluteFile().getParentFile().toPath();
+
+		return logFolder.relativize(stored.getAbsoluteFile().toPath()).toString().replace('\\', '/');
+	}
+
+	private static Path getFolder(String logFile) {
+		Path baseFolder = Paths.get(LogbackAdaptor.getBaseOutputDir()).toAbsolutePath();
+		Path logFolder = new File(logFile).getAbsoluteFile().getParentFile().toPath();
+
+		if (logFolder.startsWith(baseFolder)) {
+			return baseFolder.resolve(FOLDER_NAME);
+		}
+
+		return logFolder.resolve(FOLDER_NAME);
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+
+		return new String(hex);
+	}
+}
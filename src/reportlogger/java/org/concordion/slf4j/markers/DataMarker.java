@@ -1,6 +1,11 @@
 package org.concordion.slf4j.markers;
 
-import ch.qos.logback.core.helpers.Transform;
+import static ch.qos.logback.core.CoreConstants.LINE_SEPARATOR;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.concordion.logback.html.TransformText;
 
 public class DataMarker extends BaseDataMarker<DataMarker> {
 	private static final long serialVersionUID = -3228456581564867488L;
@@ -11,7 +16,34 @@ public class DataMarker extends BaseDataMarker<DataMarker> {
 
 	@Override
 	public String getFormattedData() {
-		return "<xmp>" + Transform.escapeTags(data) + "</xmp>";
+		StringBuilder buf = new StringBuilder(data == null ? 16 : data.length() + 16);
+		
+		buf.append("<xmp>");
+		TransformText.appendEscapedTags(buf, data);
+		buf.append("</xmp>");
+		
+		return buf.toString();
+	}
+
+	@Override
+	public String getFormattedData(InlinePolicy policy) throws IOException {
+		if (data == null || policy.isInlined(data.length()) || !policy.canSpill()) {
+			return getFormattedData();
+		}
+
+		File file = spill(policy, "data.txt");
+		int previewLength = policy.previewLength(data);
+		StringBuilder buf = new StringBuilder(previewLength + 256);
+
+		// Same format as an AttachmentMarker preview
+		InlinePolicy.appendMenu(buf, file.getName(), true);
+		buf.append("<div class=\"resizeable\">").append(LINE_SEPARATOR);
+		buf.append("<xmp class=\"fadeout\">");
+		TransformText.appendEscapedTags(buf, data.substring(0, previewLength));
+		buf.append("</xmp>").append(LINE_SEPARATOR);
+		buf.append("</div>");
+
+		return buf.toString();
 	}
 
 	@Override
@@ -0,0 +1,25 @@
+package org.concordion.slf4j.markers;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes content so identical screenshots and attachments can be recognised.
+ */
+final class Digests {
+
+	private Digests() {
+	}
+
+	/**
+	 * @return A new SHA-256 digest
+	 */
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
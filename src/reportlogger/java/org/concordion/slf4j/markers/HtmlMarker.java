@@ -1,5 +1,10 @@
 package org.concordion.slf4j.markers;
 
+import static ch.qos.logback.core.CoreConstants.LINE_SEPARATOR;
+
+import java.io.File;
+import java.io.IOException;
+
 public class HtmlMarker extends BaseDataMarker<HtmlMarker> {
 	private static final long serialVersionUID = 5412731321120168078L;
 	
@@ -12,6 +17,26 @@ public class HtmlMarker extends BaseDataMarker<HtmlMarker> {
 		return data;
 	}
 
+	/**
+	 * Large HTML can't be cut short without breaking the markup so is embedded from a file of its own instead.
+	 */
+	@Override
+	public String getFormattedData(InlinePolicy policy) throws IOException {
+		if (data == null || policy.isInlined(data.length()) || !policy.canSpill()) {
+			return getFormattedData();
+		}
+
+		File file = spill(policy, "content.html");
+		StringBuilder buf = new StringBuilder(256);
+
+		InlinePolicy.appendMenu(buf, file.getName(), false);
+		buf.append("<div class=\"resizeable\">").append(LINE_SEPARATOR);
+		buf.append("<object type=\"text/html\" data=\"").append(file.getName()).append("\"></object>").append(LINE_SEPARATOR);
+		buf.append("</div>");
+
+		return buf.toString();
+	}
+
 	@Override
 	public void prepareData() {
 
@@ -1,13 +1,15 @@
 package org.concordion.slf4j.markers;
 
 import org.slf4j.helpers.ConcordionMarker;
+import org.slf4j.helpers.MessageFormatter;
 
 public class HtmlMessageMarker extends ConcordionMarker {
 	private static final long serialVersionUID = 5412731321120168078L;
 	public static final String MARKER_NAME = "HTML_MESSAGE"; 
 	
-	private String format;
-	private Object[] arguments;
+	private final String format;
+	private final Object[] arguments;
+	private volatile String formattedMessage = null;
 
 	public HtmlMessageMarker(String format, Object... arguments) {
 		super(MARKER_NAME);
@@ -23,4 +25,18 @@ public class HtmlMessageMarker extends ConcordionMarker {
 	public Object[] getArguments() {
 		return arguments;
 	}
+
+	/**
+	 * @return The HTML message with the arguments substituted, this is only formatted once
+	 */
+	public String getFormattedMessage() {
+		String message = formattedMessage;
+		
+		if (message == null) {
+			message = MessageFormatter.arrayFormat(format, arguments).getMessage();
+			formattedMessage = message;
+		}
+		
+		return message;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+package org.concordion.slf4j.markers;
+
+import static ch.qos.logback.core.CoreConstants.LINE_SEPARATOR;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+/**
+ * Decides how much of a marker's content is inlined into the HTML log.  Content larger than the threshold is written to a
+ * file alongside the log file, or left in the file it was attached from, and only a preview of it inlined.
+ *
+ * @author Andrew Sumner
+ */
+public final class InlinePolicy {
+	/** Inlines everything, as used when rendering outside of a log file. */
+	public static final InlinePolicy UNLIMITED = new InlinePolicy(0, 0, 0, (String) null);
+
+	static final String PREVIEW_NOTE = "Preview only, open for the full content";
+
+	private final int threshold;
+	private final int previewLines;
+	private final int previewSize;
+	private final Supplier<String> logFile;
+
+	/**
+	 * @param threshold Largest content, in characters (bytes for attachments), that is inlined in full, 0 to inline everything
+	 * @param previewLines Maximum number of lines in a preview
+	 * @param previewSize Maximum number of characters in a preview
+	 * @param logFile Path of the log file that spilled content is written alongside
+	 */
+	public InlinePolicy(int threshold, int previewLines, int previewSize, final String logFile) {
+		this(threshold, previewLines, previewSize, new Supplier<String>() {
+			@Override
+			public String get() {
+				return logFile;
+			}
+		});
+	}
+
+	/**
+	 * @param threshold Largest content, in characters (bytes for attachments), that is inlined in full, 0 to inline everything
+	 * @param previewLines Maximum number of lines in a preview
+	 * @param previewSize Maximum number of characters in a preview
+	 * @param logFile Supplies the path of the log file that spilled content is written alongside, only called for content
+	 * 			over the threshold
+	 */
+	public InlinePolicy(int threshold, int previewLines, int previewSize, Supplier<String> logFile) {
+		this.threshold = threshold;
+		this.previewLines = previewLines;
+		this.previewSize = previewSize;
+		this.logFile = logFile;
+	}
+
+	/**
+	 * @param length Length of the content
+	 * @return true if the content should be inlined in full
+	 */
+	public boolean isInlined(long length) {
+		return threshold <= 0 || length <= threshold;
+	}
+
+	/**
+	 * @return true if content over the threshold can be written to a file alongside the log file
+	 */
+	public boolean canSpill() {
+		String path = logFile.get();
+
+		return path != null && !path.isEmpty();
+	}
+
+	/**
+	 * @param filename Name of the file
+	 * @return A new, empty, file alongside the log file
+	 * @throws IOException if a left over file of the same name cannot be removed
+	 */
+	public File newFile(String filename) throws IOException {
+		File file = ArtifactRegistry.nextFile(logFile.get(), filename);
+
+		Files.deleteIfExists(file.toPath());
+
+		return file;
+	}
+
+	/**
+	 * Appends the menu shown above content in a file of its own, with links to open the file and to expand the content
+	 * embedded in the log.  The content must follow in a div with the class "resizeable".
+	 * 
+	 * @param buf Buffer to append to
+	 * @param href Location of the file relative to the log file
+	 * @param preview Add a note that only a preview of the content is shown
+	 */
+	public static void appendMenu(StringBuilder buf, String href, boolean preview) {
+		buf.append("<div class=\"attachmentMenu\">").append(LINE_SEPARATOR);
+		buf.append("<a href=\"").append(href).append("\" target=\"_blank\">Open</a>&nbsp;&nbsp;").append(LINE_SEPARATOR);
+		if (preview) {
+			buf.append(PREVIEW_NOTE).append("&nbsp;&nbsp;").append(LINE_SEPARATOR);
+		}
+		buf.append("<a href=\"#\" onclick=\"toggleContent(this); return false;\">Expand</a>").append(LINE_SEPARATOR);
+		buf.append("</div>").append(LINE_SEPARATOR);
+	}
+
+	/**
+	 * @param text Content to preview
+	 * @return The number of leading characters of the content to show in a preview
+	 */
+	public int previewLength(CharSequence text) {
+		int limit = Math.min(text.length(), previewSize);
+		int lines = 0;
+
+		for (int i = 0; i < limit; i++) {
+			if (text.charAt(i) == '\n' && ++lines >= previewLines) {
+				return i + 1;
+			}
+		}
+
+		return limit;
+	}
+
+	/**
+	 * Reads a preview of the content, reading no more than the preview size from the reader.
+	 *
+	 * @param in Reader positioned at the start of the content
+	 * @return The preview
+	 * @throws IOException if unable to read the content
+	 */
+	public String readPreview(Reader in) throws IOException {
+		char[] buffer = new char[previewSize];
+		int length = 0;
+
+		while (length < buffer.length) {
+			int read = in.read(buffer, length, buffer.length - length);
+			if (read == -1) {
+				break;
+			}
+			length += read;
+		}
+
+		return new String(buffer, 0, previewLength(CharBuffer.wrap(buffer, 0, length)));
+	}
+}
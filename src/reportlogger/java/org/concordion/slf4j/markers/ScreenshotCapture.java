@@ -0,0 +1,82 @@
+package org.concordion.slf4j.markers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.concordion.ext.ScreenshotUnavailableException;
+import org.concordion.slf4j.ext.LoggingContext;
+
+/**
+ * Takes a screenshot on a helper thread so that a hung screenshot taker, eg a WebDriver session that has stopped
+ * responding, can't hold up the test for longer than the capture timeout.
+ *
+ * <p>The helper thread runs with the logging context of the calling thread, see {@link LoggingContext}, but not any other
+ * thread locals the calling thread may have.</p>
+ */
+final class ScreenshotCapture {
+	// A hung capture holds on to its thread so allow a few, but not so many that a broken browser exhausts the machine
+	private static final int MAX_THREADS = 16;
+	private static final AtomicLong timedOut = new AtomicLong();
+
+	private ScreenshotCapture() {
+	}
+
+	static long getTimedOutCount() {
+		return timedOut.get();
+	}
+
+	/**
+	 * @param capture Takes the screenshot, anything it writes to must be in memory as it may still be running after a timeout
+	 * @param timeout Maximum time to wait in milliseconds
+	 * @return Result of the capture
+	 * @throws ScreenshotUnavailableException if the screenshot was not taken in time
+	 */
+	static <T> T capture(Callable<T> capture, long timeout) throws IOException {
+		Future<T> task;
+
+		try {
+			task = Pool.EXECUTOR.submit(LoggingContext.capture().wrap(capture));
+		} catch (RejectedExecutionException e) {
+			timedOut.incrementAndGet();
+			throw new ScreenshotUnavailableException("screenshot skipped, " + MAX_THREADS + " earlier screenshots have not completed");
+		}
+
+		try {
+			return task.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			task.cancel(true);
+			timedOut.incrementAndGet();
+			throw new ScreenshotUnavailableException("screenshot timed out after " + timeout + " ms");
+		} catch (InterruptedException e) {
+			task.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while taking screenshot");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+
+			throw new IOException(cause);
+		}
+	}
+
+	private static final class Pool {
+		static final ExecutorService EXECUTOR = Background.newCachedPool("reportlogger-screenshot", MAX_THREADS);
+	}
+}
@@ -0,0 +1,29 @@
+package org.concordion.slf4j.markers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Encodes and writes screenshots captured by a RawScreenshotTaker on a small pool of background threads.
+ */
+final class ScreenshotEncoder {
+
+	private ScreenshotEncoder() {
+	}
+
+	/**
+	 * Queues the task, once the queue is full the task runs on the calling thread so captured screenshots can't use up
+	 * all the memory.
+	 *
+	 * @param logFile Path of the log file the screenshot belongs to, the log file waits for the task when it is released
+	 * @param task Encodes and writes the screenshot
+	 */
+	static void submit(String logFile, Callable<Void> task) {
+		ArtifactRegistry.addPending(logFile, Pool.EXECUTOR.submit(task));
+	}
+
+	private static final class Pool {
+		static final ExecutorService EXECUTOR = Background.newFixedPool("reportlogger-screenshot-encoder", 32, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+}
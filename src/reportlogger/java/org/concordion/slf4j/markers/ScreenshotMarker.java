@@ -1,21 +1,37 @@
 package org.concordion.slf4j.markers;
 
 import java.awt.Dimension;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
 
+import org.concordion.ext.AttachmentWriter;
+import org.concordion.ext.RawScreenshot;
+import org.concordion.ext.RawScreenshotTaker;
 import org.concordion.ext.ScreenshotTaker;
-import org.slf4j.MDC;
+import org.concordion.ext.ScreenshotUnavailableException;
+import org.concordion.logback.html.TransformText;
 
 public class ScreenshotMarker extends BaseDataMarker<ScreenshotMarker> {
 	private static final long serialVersionUID = 5412731321120168078L;
-	private static final String NEXT_FILE_NUMBER = "NEXT_FILE_NUMBER";
+	public static final String SKIP_UNCHANGED_PROPERTY = "reportlogger.skipUnchangedScreenshots";
+
+	private static volatile boolean skipUnchanged = Boolean.getBoolean(SKIP_UNCHANGED_PROPERTY);
+	private static volatile long captureTimeout = 0;
+	private static volatile float encodingQuality = -1;
 
 	private final String logFile;
 	private final ScreenshotTaker screenshotTaker;
-	private Dimension imageSize;
+	private volatile Dimension imageSize;
+	private volatile String thumbnail;
+	private volatile String unavailable;
 	
 	public ScreenshotMarker(String logFile, ScreenshotTaker screenshotTaker) {
 		super("");
@@ -24,21 +40,121 @@ public class ScreenshotMarker extends BaseDataMarker<ScreenshotMarker> {
 		this.screenshotTaker = screenshotTaker;
 	}
 
+	public static boolean isSkipUnchanged() {
+		return skipUnchanged;
+	}
+
+	/**
+	 * If set to true a screenshot that is identical to the previous screenshot in the same log file is not written, the 
+	 * marker refers to the earlier file instead.  Can also be enabled by setting the system property 
+	 * {@value #SKIP_UNCHANGED_PROPERTY} to true.
+	 * 
+	 * <p>The encoded screenshot is needed to compare it, so screenshots from a {@link RawScreenshotTaker} are encoded on the
+	 * test thread rather than in the background while this is enabled.</p>
+	 * 
+	 * @param value Value to set
+	 */
+	public static void setSkipUnchanged(boolean value) {
+		skipUnchanged = value;
+	}
+
+	public static long getCaptureTimeout() {
+		return captureTimeout;
+	}
+
+	/**
+	 * Sets the maximum time to wait for a screenshot, if it takes longer the log records that the screenshot timed out and
+	 * the test continues.
+	 * 
+	 * <p>With a timeout the screenshot taker is called from another thread.  The thread has the test's logging context, but
+	 * not the test thread's other thread locals, so a taker must hold on to its WebDriver rather than look up a per thread
+	 * driver when called.</p>
+	 * 
+	 * @param milliseconds Timeout, 0 (the default) to wait for as long as it takes
+	 */
+	public static void setCaptureTimeout(long milliseconds) {
+		captureTimeout = milliseconds;
+	}
+
+	public static float getEncodingQuality() {
+		return encodingQuality;
+	}
+
+	/**
+	 * Sets the compression quality used to encode screenshots taken by a {@link RawScreenshotTaker}.
+	 * 
+	 * @param quality Between 0 and 1, or a negative value (the default) to use the image format's default and write screenshots
+	 * 			captured already encoded as is
+	 */
+	public static void setEncodingQuality(float quality) {
+		encodingQuality = quality;
+	}
+
+	/**
+	 * @return The number of screenshots that have timed out, or were skipped as too many earlier screenshots had not finished
+	 */
+	public static long getTimedOutCaptureCount() {
+		return ScreenshotCapture.getTimedOutCount();
+	}
+
 	public String getFile() {
+		prepareIfRequired();
+		
 		return data;
 	}
 
+	/**
+	 * @return Location of the thumbnail relative to the log file, may not have been written yet, or null if there is no thumbnail
+	 */
+	public String getThumbnail() {
+		prepareIfRequired();
+		
+		return thumbnail;
+	}
+
 	public Dimension getImageSize() {
+		prepareIfRequired();
+		
 		return imageSize;
 	}
 
+	/**
+	 * @return Why the screenshot is unavailable, eg it timed out, or null if the screenshot was taken
+	 */
+	public String getUnavailableReason() {
+		prepareIfRequired();
+		
+		return unavailable;
+	}
+
+	@Override
+	public boolean hasData() {
+		return super.hasData() || unavailable != null;
+	}
+
 	@Override
 	public String getFormattedData() {
+		prepareIfRequired();
+		
+		if (unavailable != null) {
+			return TransformText.escapeTags(unavailable);
+		}
+		
 		StringBuilder buf = new StringBuilder();
 
 		buf.append("<a href=\"").append(data).append("\">");
 		buf.append("<img");
-		buf.append(" src=\"").append(data).append("\"");
+		
+		if (thumbnail == null) {
+			buf.append(" src=\"").append(data).append("\"");
+		} else {
+			// The full size image is only loaded when clicked on, unless the thumbnail is unavailable
+			buf.append(" src=\"").append(thumbnail).append("\"");
+			buf.append(" onerror=\"this.onerror=null;this.src='").append(data).append("'\"");
+		}
+		
+		// Shown in place of the image if it couldn't be written
+		buf.append(" alt=\"screenshot could not be loaded\"");
 		buf.append(" onMouseOver=\"showScreenPopup(this);this.style.cursor='pointer'\"");
 		buf.append(" onMouseOut=\"hideScreenPopup();this.style.cursor='default'\"");
 
@@ -78,7 +194,178 @@ public class ScreenshotMarker extends BaseDataMarker<ScreenshotMarker> {
 	}
 
 	public void writeScreenshot() throws IOException {
-		int fileNumber = getNextFileNumber();
+		try {
+			if (skipUnchanged) {
+				writeIfChanged();
+			} else if (screenshotTaker instanceof RawScreenshotTaker && !ContentStore.isEnabled()) {
+				writeInBackground();
+			} else if (captureTimeout > 0) {
+				final ByteArrayOutputStream capture = capture(null);
+	
+				write(new AttachmentWriter() {
+					@Override
+					public void writeTo(OutputStream outputStream) throws IOException {
+						capture.writeTo(outputStream);
+					}
+				});
+			} else {
+				write(new AttachmentWriter() {
+					@Override
+					public void writeTo(OutputStream outputStream) throws IOException {
+						imageSize = takeScreenshot(outputStream);
+					}
+				});
+			}
+		} catch (ScreenshotUnavailableException e) {
+			// Record the reason in the log and let the test carry on
+			this.unavailable = e.getMessage() == null ? "screenshot unavailable" : e.getMessage();
+		}
+	}
+
+	/**
+	 * Takes the screenshot into memory, within the capture timeout if one is set, and sets the image size.
+	 * 
+	 * @param digest If not null, is updated with the screenshot as it is written
+	 */
+	private ByteArrayOutputStream capture(MessageDigest digest) throws IOException {
+		ByteArrayOutputStream capture = new ByteArrayOutputStream(64 * 1024);
+		final OutputStream outputStream = digest == null ? capture : new DigestOutputStream(capture, digest);
+		long timeout = captureTimeout;
+
+		if (timeout > 0) {
+			this.imageSize = ScreenshotCapture.capture(new Callable<Dimension>() {
+				@Override
+				public Dimension call() throws Exception {
+					return takeScreenshot(outputStream);
+				}
+			}, timeout);
+		} else {
+			this.imageSize = takeScreenshot(outputStream);
+		}
+
+		return capture;
+	}
+
+	private Dimension takeScreenshot(OutputStream outputStream) throws IOException {
+		if (screenshotTaker instanceof RawScreenshotTaker) {
+			RawScreenshot screenshot = ((RawScreenshotTaker) screenshotTaker).takeRawScreenshot();
+			screenshot.writeTo(outputStream, screenshotTaker.getFileExtension(), encodingQuality);
+			return screenshot.getSize();
+		}
+
+		return screenshotTaker.writeScreenshotTo(outputStream);
+	}
+
+	/**
+	 * Captures a raw screenshot and leaves encoding and writing it to a background thread.  The file name and size are
+	 * known up front so the log can refer to the file before it has been written, the log file waits for the file when
+	 * it is released.  The test has moved on, and the marker has usually been written to the log, by the time the file is
+	 * written so a failure is only reported to the logback status manager.
+	 */
+	private void writeInBackground() throws IOException {
+		final RawScreenshotTaker rawScreenshotTaker = (RawScreenshotTaker) screenshotTaker;
+		final RawScreenshot screenshot;
+
+		if (captureTimeout > 0) {
+			screenshot = ScreenshotCapture.capture(new Callable<RawScreenshot>() {
+				@Override
+				public RawScreenshot call() throws Exception {
+					return rawScreenshotTaker.takeRawScreenshot();
+				}
+			}, captureTimeout);
+		} else {
+			screenshot = rawScreenshotTaker.takeRawScreenshot();
+		}
+
+		final File file = new File(buildFileName(getBaseFilename(), ArtifactRegistry.nextFileNumber(logFile)));
+		final String format = screenshotTaker.getFileExtension();
+		final float quality = encodingQuality;
+		final boolean createThumbnail = Thumbnails.isEnabled() && Thumbnails.isRequired(screenshot.getSize());
+
+		this.imageSize = screenshot.getSize();
+		this.data = file.getName();
+		if (createThumbnail) {
+			this.thumbnail = Thumbnails.getThumbnailPath(data);
+		}
+
+		ScreenshotEncoder.submit(logFile, new Callable<Void>() {
+			@Override
+			public Void call() {
+				try {
+					OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+
+					try {
+						screenshot.writeTo(outputStream, format, quality);
+					} finally {
+						outputStream.close();
+					}
+				} catch (IOException e) {
+					writeFailed(file, e);
+					return null;
+				} catch (RuntimeException e) {
+					writeFailed(file, e);
+					return null;
+				}
+
+				if (createThumbnail) {
+					try {
+						Thumbnails.write(file, screenshot.getImage(), screenshot.getSize());
+					} catch (IOException e) {
+						// Log falls back to the full size image
+					}
+				}
+
+				return null;
+			}
+		});
+	}
+
+	private void writeFailed(File file, Exception e) {
+		Background.reportError(this, "Unable to write screenshot " + file, e);
+	}
+
+	/**
+	 * Captures the screenshot to memory, hashing it on the way, and only writes it if it differs from the previous screenshot
+	 * in the log file.
+	 */
+	private void writeIfChanged() throws IOException {
+		MessageDigest digest = Digests.newDigest();
+		final ByteArrayOutputStream capture = capture(digest);
+		byte[] hash = digest.digest();
+		ArtifactRegistry.Entry entry = ArtifactRegistry.getEntry(logFile);
+
+		// Threads logging to the same file take turns so neither writes the same image, nor leaves an older one as the last
+		synchronized (entry) {
+			Capture previous = entry.lastScreenshot;
+
+			if (previous != null && Arrays.equals(previous.hash, hash)) {
+				this.data = previous.data;
+				this.imageSize = previous.imageSize;
+				this.thumbnail = previous.thumbnail;
+				return;
+			}
+
+			write(new AttachmentWriter() {
+				@Override
+				public void writeTo(OutputStream outputStream) throws IOException {
+					capture.writeTo(outputStream);
+				}
+			});
+
+			entry.lastScreenshot = new Capture(hash, data, imageSize, thumbnail);
+		}
+	}
+
+	private void write(AttachmentWriter content) throws IOException {
+		if (ContentStore.isEnabled()) {
+			File stored = ContentStore.store(logFile, screenshotTaker.getFileExtension(), content);
+
+			this.data = ContentStore.relativePath(logFile, stored);
+			submitThumbnail(stored);
+			return;
+		}
+
+		int fileNumber = ArtifactRegistry.nextFileNumber(logFile);
 		String baseFile = getBaseFilename();
 
 		File screenshot = new File(buildFileName(baseFile, fileNumber));
@@ -86,28 +373,21 @@ public class ScreenshotMarker extends BaseDataMarker<ScreenshotMarker> {
 
 		try {
 			outputStream = new FileOutputStream(screenshot);
-			this.imageSize = screenshotTaker.writeScreenshotTo(outputStream);
+			content.writeTo(outputStream);
 			this.data = screenshot.getName();
 		} finally {
 			if (outputStream != null) {
 				outputStream.close();
 			}
 		}
+		
+		submitThumbnail(screenshot);
 	}
 
-	private int getNextFileNumber() {
-		int nextNumber = -1;
-		String next = MDC.get(NEXT_FILE_NUMBER);
-
-		if (next != null && !next.isEmpty()) {
-			nextNumber = Integer.valueOf(next);
+	private void submitThumbnail(File image) {
+		if (Thumbnails.isEnabled() && Thumbnails.submit(logFile, image, imageSize)) {
+			this.thumbnail = Thumbnails.getThumbnailPath(data);
 		}
-
-		nextNumber++;
-		
-		MDC.put(NEXT_FILE_NUMBER, String.valueOf(nextNumber));
-
-		return nextNumber;
 	}
 
 	private String getBaseFilename() {
@@ -123,4 +403,21 @@ public class ScreenshotMarker extends BaseDataMarker<ScreenshotMarker> {
 	private String buildFileName(String baseFile, int index) {
 		return String.format("%sScreenShot%s.%s", baseFile, index, screenshotTaker.getFileExtension());
 	}
+
+	/**
+	 * The last screenshot written to a log file.
+	 */
+	static final class Capture {
+		final byte[] hash;
+		final String data;
+		final Dimension imageSize;
+		final String thumbnail;
+
+		Capture(byte[] hash, String data, Dimension imageSize, String thumbnail) {
+			this.hash = hash;
+			this.data = data;
+			this.imageSize = imageSize;
+			this.thumbnail = thumbnail;
+		}
+	}
 }
\ No newline at end of file
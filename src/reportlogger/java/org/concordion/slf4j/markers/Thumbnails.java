@@ -0,0 +1,181 @@
+package org.concordion.slf4j.markers;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Optionally creates downscaled JPEG copies of screenshots for the HTML log to show in place of the full size image, which
+ * then only loads when clicked on.
+ *
+ * <p>Thumbnails are created on a small pool of background threads so the test never waits for them.  The log falls back to
+ * the full size image if a thumbnail is not ready, or could not be created, when the log is viewed.  Disabled by default,
+ * enable by calling {@link #setEnabled(boolean)} or setting the system property {@value #ENABLED_PROPERTY} to true.</p>
+ *
+ * @author Andrew Sumner
+ */
+public final class Thumbnails {
+	public static final String ENABLED_PROPERTY = "reportlogger.thumbnails";
+	static final String SUFFIX = "-thumb.jpg";
+
+	// Large enough for the popup shown when hovering over a screenshot
+	private static final int MAX_WIDTH = 800;
+	private static final int MAX_HEIGHT = 600;
+
+	private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+	private Thumbnails() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+	/**
+	 * Queues the creation of a thumbnail for the image if it is larger than a thumbnail.
+	 *
+	 * @param logFile Path of the log file the image belongs to, the log file waits for the thumbnail when it is released
+	 * @param image Image file
+	 * @param imageSize Size of the image
+	 * @return true if a thumbnail will be created alongside the image, see {@link #getThumbnailPath(String)}
+	 */
+	public static boolean submit(String logFile, final File image, Dimension imageSize) {
+		if (!isRequired(imageSize)) {
+			return false;
+		}
+
+		final File thumbnail = new File(getThumbnailPath(image.getPath()));
+		final double scale = getScale(imageSize);
+
+		Future<?> task;
+
+		try {
+			task = Pool.EXECUTOR.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						writeThumbnail(image, null, thumbnail, scale);
+					} catch (IOException e) {
+						// Log falls back to the full size image
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Too far behind, show the full size image
+			return false;
+		}
+
+		ArtifactRegistry.addPending(logFile, task);
+
+		return true;
+	}
+
+	/**
+	 * @param imageSize Size of the image
+	 * @return true if the image is larger than a thumbnail
+	 */
+	static boolean isRequired(Dimension imageSize) {
+		return imageSize != null && (imageSize.width > MAX_WIDTH || imageSize.height > MAX_HEIGHT);
+	}
+
+	/**
+	 * Creates the thumbnail for an image on the current thread, for use by work that is already running in the background.
+	 *
+	 * @param image Image file
+	 * @param source The image's pixels if already available, otherwise null to read them from the file
+	 * @param imageSize Size of the image
+	 * @throws IOException if unable to create the thumbnail
+	 */
+	static void write(File image, BufferedImage source, Dimension imageSize) throws IOException {
+		if (isRequired(imageSize)) {
+			writeThumbnail(image, source, new File(getThumbnailPath(image.getPath())), getScale(imageSize));
+		}
+	}
+
+	private static double getScale(Dimension imageSize) {
+		return Math.min((double) MAX_WIDTH / imageSize.width, (double) MAX_HEIGHT / imageSize.height);
+	}
+
+	/**
+	 * @param imagePath Path of the image, may be relative
+	 * @return Path of the thumbnail for the image
+	 */
+	public static String getThumbnailPath(String imagePath) {
+		int pos = imagePath.lastIndexOf('.');
+
+		return (pos > imagePath.lastIndexOf('/') && pos > imagePath.lastIndexOf('\\') ? imagePath.substring(0, pos) : imagePath) + SUFFIX;
+	}
+
+	private static void writeThumbnail(File image, BufferedImage source, File thumbnail, double scale) throws IOException {
+		if (thumbnail.exists()) {
+			// Shared image from the content store
+			return;
+		}
+
+		if (source == null) {
+			source = ImageIO.read(image);
+		}
+		
+		if (source == null) {
+			throw new IOException("Unsupported image format: " + image);
+		}
+
+		int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+		// JPEG has no alpha channel
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = scaled.createGraphics();
+
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, width, height);
+			g.drawImage(source, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+
+		// Only expose the thumbnail once complete as the log may be being viewed, and another thread may be creating the same
+		// thumbnail for an image in the content store
+		Path temp = Files.createTempFile(thumbnail.getAbsoluteFile().getParentFile().toPath(), "thumbnail", ".tmp");
+
+		try {
+			if (!ImageIO.write(scaled, "jpg", temp.toFile())) {
+				throw new IOException("No JPEG writer available");
+			}
+
+			try {
+				Files.move(temp, thumbnail.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// Fine if another thread has just created the same thumbnail
+				if (!thumbnail.exists()) {
+					throw e;
+				}
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static final class Pool {
+		static final ExecutorService EXECUTOR = Background.newFixedPool("reportlogger-thumbnail", 500, null);
+	}
+}
@@ -0,0 +1,139 @@
+package org.concordion.ext.loggingFormatter;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+
+import org.concordion.logback.LogbackAdaptor;
+import org.concordion.logback.LoggingListener;
+import org.concordion.logback.LoggingListenerDispatcher;
+import org.concordion.slf4j.ext.ReportLogger;
+import org.concordion.slf4j.ext.ReportLoggerFactory;
+import org.concordion.slf4j.markers.ReportLoggerMarkers;
+import org.concordion.slf4j.markers.ScreenshotMarker;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import test.concordion.logback.DummyScreenshotTaker;
+
+public class FailureScreenshotsTest {
+	private static final ReportLogger LOGGER = ReportLoggerFactory.getReportLogger(FailureScreenshotsTest.class);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final LogbackAdaptor adaptor = new LogbackAdaptor();
+	private final FailureScreenshots screenshots = new FailureScreenshots();
+	private final DummyScreenshotTaker screenshotTaker = new DummyScreenshotTaker();
+
+	@Test
+	public void everyFailureGetsItsOwnScreenshotByDefault() {
+		ScreenshotMarker first = screenshots.getScreenshot("exampleLog.html", screenshotTaker);
+
+		assertThat(screenshots.getScreenshot("exampleLog.html", screenshotTaker), is(not(sameInstance(first))));
+	}
+
+	@Test
+	public void screenshotIsSharedWithinALogFile() {
+		screenshots.setPolicy(FailureScreenshotPolicy.ONCE_PER_EXAMPLE);
+
+		ScreenshotMarker first = screenshots.getScreenshot("exampleLog.html", screenshotTaker);
+
+		assertThat(screenshots.getScreenshot("exampleLog.html", screenshotTaker), is(sameInstance(first)));
+		assertThat(screenshots.getScreenshot("otherLog.html", screenshotTaker), is(not(sameInstance(first))));
+	}
+
+	@Test
+	public void newStepTakesANewScreenshot() {
+		screenshots.setPolicy(FailureScreenshotPolicy.UNLESS_NEW_STEP);
+
+		LoggingListener stepCounter = screenshots.getStepCounter();
+		String testName = folder.getRoot().getAbsolutePath() + "/step";
+		String logFile = testName + "Log.html";
+
+		adaptor.startLogFile(testName);
+
+		try {
+			ScreenshotMarker first = screenshots.getScreenshot(logFile, screenshotTaker);
+			assertThat(screenshots.getScreenshot(logFile, screenshotTaker), is(sameInstance(first)));
+
+			// Steps in tests running in parallel don't count
+			stepCounter.doAppend(newStep(testName + "Other"));
+			assertThat(screenshots.getScreenshot(logFile, screenshotTaker), is(sameInstance(first)));
+
+			stepCounter.doAppend(newStep(testName));
+
+			assertThat(screenshots.getScreenshot(logFile, screenshotTaker), is(not(sameInstance(first))));
+		} finally {
+			adaptor.stopLogFile();
+		}
+	}
+
+	@Test
+	public void stepsAreCountedAsTheyAreLogged() {
+		screenshots.setPolicy(FailureScreenshotPolicy.UNLESS_NEW_STEP);
+
+		LoggingListenerDispatcher dispatcher = LoggingListenerDispatcher.getInstance();
+		String scope = LoggingListenerDispatcher.newScope();
+		String previousScope = LoggingListenerDispatcher.enterScope(scope);
+		String testName = folder.getRoot().getAbsolutePath() + "/logged";
+
+		dispatcher.addListener(screenshots.getStepCounter(), scope);
+		adaptor.startLogFile(testName);
+
+		try {
+			String logFile = adaptor.getLogFile().getPath();
+			ScreenshotMarker first = screenshots.getScreenshot(logFile, screenshotTaker);
+
+			LOGGER.info("Not a step");
+			assertThat(screenshots.getScreenshot(logFile, screenshotTaker), is(sameInstance(first)));
+
+			LOGGER.step("A step");
+
+			assertThat(screenshots.getScreenshot(logFile, screenshotTaker), is(not(sameInstance(first))));
+		} finally {
+			adaptor.stopLogFile();
+			dispatcher.removeScope(scope);
+			LoggingListenerDispatcher.exitScope(previousScope);
+		}
+	}
+
+	@Test
+	public void stepsAreOnlyCountedForUnlessNewStep() {
+		assertThat(screenshots.getStepCounter(), is(nullValue()));
+
+		screenshots.setPolicy(FailureScreenshotPolicy.UNLESS_NEW_STEP);
+
+		assertThat(screenshots.getStepCounter(), is(notNullValue()));
+	}
+
+	@Test
+	public void screenshotIsSharedWithinTheTimeWindow() throws Exception {
+		screenshots.setPolicy(FailureScreenshotPolicy.TIME_WINDOW);
+		screenshots.setWindow(50);
+
+		ScreenshotMarker first = screenshots.getScreenshot("exampleLog.html", screenshotTaker);
+		assertThat(screenshots.getScreenshot("exampleLog.html", screenshotTaker), is(sameInstance(first)));
+
+		Thread.sleep(100);
+
+		assertThat(screenshots.getScreenshot("exampleLog.html", screenshotTaker), is(not(sameInstance(first))));
+	}
+
+	private LoggingEvent newStep(String testName) {
+		Logger logger = (Logger) LoggerFactory.getLogger(FailureScreenshotsTest.class);
+		LoggingEvent event = new LoggingEvent(FailureScreenshotsTest.class.getName(), logger, Level.INFO, "Step", null, null);
+
+		event.setMarker(ReportLoggerMarkers.STEP_MARKER);
+		event.setMDCPropertyMap(Collections.singletonMap(LogbackAdaptor.TEST_NAME, testName));
+
+		return event;
+	}
+}
@@ -0,0 +1,124 @@
+package org.concordion.logback;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+public class FlushableAsyncAppenderTest {
+	private static final int EVENTS = 5000;
+
+	private LoggerContext context;
+	private Logger logger;
+	private SlowListAppender target;
+	private FlushableAsyncAppender async;
+
+	@Before
+	public void setUp() {
+		context = new LoggerContext();
+		logger = context.getLogger(FlushableAsyncAppenderTest.class);
+		logger.setLevel(Level.ALL);
+		logger.setAdditive(false);
+
+		target = new SlowListAppender();
+		target.setContext(context);
+		target.setName("TARGET");
+		target.start();
+
+		async = new FlushableAsyncAppender();
+		async.setContext(context);
+		async.setDiscardingThreshold(0);
+		async.addAppender(target);
+		async.start();
+
+		logger.addAppender(async);
+	}
+
+	@After
+	public void tearDown() {
+		MDC.remove(LogbackAdaptor.TEST_NAME);
+		context.stop();
+	}
+
+	@Test
+	public void flushWaitsForQueuedEventsInOrder() {
+		for (int i = 0; i < EVENTS; i++) {
+			logger.trace("event {}", i);
+		}
+
+		assertThat(async.flush(), is(true));
+		assertThat(target.count, is(EVENTS));
+		assertThat(target.inOrder, is(true));
+	}
+
+	@Test
+	public void flushIsNotLostWhenNeverBlockDropsEvents() {
+		async.stop();
+
+		async = new FlushableAsyncAppender();
+		async.setContext(context);
+		async.setDiscardingThreshold(0);
+		async.setQueueSize(1);
+		async.setNeverBlock(true);
+		async.setFlushTimeout(10000);
+		async.addAppender(target);
+		async.start();
+
+		logger.detachAndStopAllAppenders();
+		logger.addAppender(async);
+
+		// Sleeps in the first event so the queue is full when flushing
+		for (int i = 0; i < 3; i++) {
+			logger.trace("event {}", i);
+		}
+
+		long start = System.currentTimeMillis();
+
+		assertThat(async.flush(), is(true));
+		assertThat(System.currentTimeMillis() - start < 5000, is(true));
+	}
+
+	@Test
+	public void testNameIsAvailableToAttachedAppender() {
+		MDC.put(LogbackAdaptor.TEST_NAME, "build/test/example");
+		logger.info("with test name");
+		MDC.remove(LogbackAdaptor.TEST_NAME);
+		logger.info("without test name");
+
+		async.flush();
+
+		assertThat(target.messages.toString(), is("build/test/example|null|"));
+	}
+
+	private static class SlowListAppender extends AppenderBase<ILoggingEvent> {
+		final StringBuilder messages = new StringBuilder();
+		int count = 0;
+		boolean inOrder = true;
+
+		@Override
+		protected void append(ILoggingEvent event) {
+			if (event.getArgumentArray() != null) {
+				inOrder &= event.getArgumentArray()[0].equals(count);
+			}
+
+			if (count++ % 1000 == 0) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			messages.append(MDC.get(LogbackAdaptor.TEST_NAME)).append('|');
+		}
+	}
+}
@@ -7,6 +7,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -18,10 +19,13 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 public class LogbackAdaptorTest {
 	private static final int THREAD_LIMIT = 5;
 	private static final int THREAD_POOL = 20;
+	private static final int STRESS_THREADS = 32;
+	private static final int STRESS_ITERATIONS = 2000;
 	
 	@Rule
 	public TemporaryFolder folder = new TemporaryFolder();
@@ -50,6 +54,105 @@ public class LogbackAdaptorTest {
 		System.out.println("\nFinished all threads");
 	}
 
+	@Test
+	public void registeredLogFileIsUsedUntilTestStops() {
+		LogbackAdaptor lba = new LogbackAdaptor();
+		String testName = folder.getRoot().getAbsolutePath() + "/registered";
+		File logFile = new File(testName + "Custom.html");
+
+		lba.startLogFile(testName);
+		LogbackAdaptor.registerLogFile(testName, logFile);
+
+		// Not searched for on disk, so doesn't need to exist
+		assertThat(lba.getLogFile(), is(logFile));
+
+		lba.stopLogFile();
+		lba.startLogFile(testName);
+
+		assertThat(lba.getLogFile(), is(new File("")));
+		lba.stopLogFile();
+	}
+
+	@Test
+	public void htmlLogFileIsPreferredWhenRegisteredSecond() {
+		LogbackAdaptor lba = new LogbackAdaptor();
+		String testName = folder.getRoot().getAbsolutePath() + "/preferHtml";
+		File textLog = new File(testName + ".log");
+		File htmlLog = new File(testName + "Log.html");
+
+		lba.startLogFile(testName);
+		LogbackAdaptor.registerLogFile(testName, textLog);
+		LogbackAdaptor.registerLogFile(testName, htmlLog);
+
+		assertThat(lba.getLogFile(), is(htmlLog));
+
+		// But a plain text log doesn't replace the HTML log
+		LogbackAdaptor.registerLogFile(testName, textLog);
+
+		assertThat(lba.getLogFile(), is(htmlLog));
+		lba.stopLogFile();
+	}
+
+	@Test
+	public void testStackIsPerThread() throws InterruptedException, ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(STRESS_THREADS);
+		List<Future<Boolean>> futures = new ArrayList<>();
+		CountDownLatch start = new CountDownLatch(1);
+		
+		for (int i = 0; i < STRESS_THREADS; i++) { 
+			futures.add(executor.submit(new NestedTests("thread" + i, start)));
+		}
+		
+		// Release all threads at once to maximise overlap
+		start.countDown();
+		
+		for (Future<Boolean> future : futures) {
+			assertThat(future.get(), is(true));
+		}
+		
+		executor.shutdown();
+	}
+
+	/**
+	 * Repeatedly runs a specification with an example that calls another specification using the Run command.
+	 */
+	public class NestedTests implements Callable<Boolean> {
+		private final String name;
+		private final CountDownLatch start;
+
+		NestedTests(String name, CountDownLatch start) {
+			this.name = name;
+			this.start = start;
+		}
+
+		@Override
+		public Boolean call() throws Exception {
+			LogbackAdaptor lba = new LogbackAdaptor();
+			start.await();
+
+			for (int i = 0; i < STRESS_ITERATIONS; i++) {
+				String spec = name + "/spec" + i;
+				String example = spec + "[example]";
+				String nested = name + "/nested" + i;
+				
+				lba.startLogFile(spec);
+				lba.startLogFile(example);
+				lba.startLogFile(nested);
+				assertThat(MDC.get(LogbackAdaptor.TEST_NAME), is(nested));
+				
+				lba.stopLogFile();
+				assertThat(MDC.get(LogbackAdaptor.TEST_NAME), is(example));
+				
+				lba.stopLogFile();
+				assertThat(MDC.get(LogbackAdaptor.TEST_NAME), is(spec));
+				
+				lba.stopLogFile();
+				assertThat(MDC.get(LogbackAdaptor.TEST_NAME), is(nullValue()));
+			}
+
+			return true;
+		}
+	}
 
 	public class MyRunnable implements Callable<Boolean> {
 		Logger logger = LoggerFactory.getLogger(MyRunnable.class);
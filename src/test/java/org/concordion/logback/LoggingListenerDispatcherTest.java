@@ -0,0 +1,147 @@
+package org.concordion.logback;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class LoggingListenerDispatcherTest {
+	private LoggerContext context;
+	private LoggingListenerDispatcher dispatcher;
+
+	@Before
+	public void setUp() {
+		context = new LoggerContext();
+
+		dispatcher = new LoggingListenerDispatcher();
+		dispatcher.setContext(context);
+		dispatcher.start();
+	}
+
+	@Test
+	public void deliversOnlyToListenersWithMatchingMarkers() {
+		CountingListener storyboard = newListener("STORYBOARD");
+		CountingListener other = newListener("OTHER", "STORYBOARD");
+
+		Marker marker = MarkerFactory.getDetachedMarker("FLUENT_LOGGER");
+		Marker data = MarkerFactory.getDetachedMarker("DATA");
+		data.add(MarkerFactory.getDetachedMarker("STORYBOARD"));
+		marker.add(data);
+		marker.add(MarkerFactory.getDetachedMarker("OTHER"));
+
+		dispatcher.doAppend(newEvent(marker));
+		dispatcher.doAppend(newEvent(MarkerFactory.getDetachedMarker("OTHER")));
+		dispatcher.doAppend(newEvent(null));
+
+		assertThat(storyboard.count, is(1));
+		assertThat(other.count, is(2));
+	}
+
+	@Test
+	public void listenersWithoutMarkersReceiveEverything() {
+		CountingListener all = newListener((String[]) null);
+
+		dispatcher.doAppend(newEvent(null));
+		dispatcher.doAppend(newEvent(MarkerFactory.getDetachedMarker("OTHER")));
+
+		assertThat(all.count, is(2));
+	}
+
+	@Test
+	public void listenersCanBeRemoved() {
+		CountingListener listener = newListener("STORYBOARD");
+
+		assertThat(dispatcher.addListener(listener), is(false));
+		assertThat(dispatcher.removeListener(listener), is(true));
+		assertThat(dispatcher.isRegistered(listener), is(false));
+
+		dispatcher.doAppend(newEvent(MarkerFactory.getDetachedMarker("STORYBOARD")));
+
+		assertThat(listener.count, is(0));
+	}
+
+	@Test
+	public void scopedListenersOnlyReceiveEventsFromTheirScope() {
+		CountingListener first = newScopedListener("first");
+		CountingListener second = newScopedListener("second");
+
+		String previous = LoggingListenerDispatcher.enterScope("first");
+		try {
+			dispatcher.doAppend(newEvent(MarkerFactory.getDetachedMarker("STORYBOARD")));
+		} finally {
+			LoggingListenerDispatcher.exitScope(previous);
+		}
+
+		dispatcher.doAppend(newEvent(MarkerFactory.getDetachedMarker("STORYBOARD")));
+
+		assertThat(first.count, is(1));
+		assertThat(second.count, is(0));
+		assertThat(LoggingListenerDispatcher.getCurrentScope(), is(nullValue()));
+
+		dispatcher.removeScope("first");
+		assertThat(dispatcher.isRegistered(first, "first"), is(false));
+	}
+
+	private CountingListener newScopedListener(String scope) {
+		CountingListener listener = new CountingListener(new String[] { "STORYBOARD" });
+		listener.setContext(context);
+		listener.start();
+
+		dispatcher.addListener(listener, scope);
+
+		return listener;
+	}
+
+	private CountingListener newListener(String... markers) {
+		CountingListener listener = new CountingListener(markers);
+		listener.setContext(context);
+		listener.start();
+
+		dispatcher.addListener(listener);
+
+		return listener;
+	}
+
+	private LoggingEvent newEvent(Marker marker) {
+		LoggingEvent event = new LoggingEvent(LoggingListenerDispatcherTest.class.getName(), context.getLogger(LoggingListenerDispatcherTest.class), Level.INFO, "message", null, null);
+		event.setMarker(marker);
+		return event;
+	}
+
+	private static class CountingListener extends LoggingListener {
+		private final String[] markers;
+		int count = 0;
+
+		CountingListener(String[] markers) {
+			this.markers = markers;
+		}
+
+		@Override
+		protected void append(ILoggingEvent event) {
+			count++;
+		}
+
+		@Override
+		public String[] getFilterMarkers() {
+			return markers;
+		}
+
+		@Override
+		public Marker getConcordionEventMarker() {
+			return null;
+		}
+
+		@Override
+		public boolean getHandleFailureAndThrowableEvents() {
+			return true;
+		}
+	}
+}
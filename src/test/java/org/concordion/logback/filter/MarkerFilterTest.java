@@ -0,0 +1,98 @@
+package org.concordion.logback.filter;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.concordion.slf4j.markers.ReportLoggerMarkers;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+
+public class MarkerFilterTest {
+	private LoggerContext context;
+	private MarkerFilter filter;
+
+	@Before
+	public void setUp() {
+		context = new LoggerContext();
+
+		filter = new MarkerFilter();
+		filter.setContext(context);
+		filter.setMarkers(new String[] { "STORYBOARD", "STEP" });
+		filter.setOnMatch(FilterReply.ACCEPT);
+		filter.setOnMismatch(FilterReply.DENY);
+		filter.start();
+	}
+
+	@Test
+	public void matchesNestedMarkers() {
+		Marker parent = MarkerFactory.getDetachedMarker("FLUENT_LOGGER");
+		Marker child = MarkerFactory.getDetachedMarker("DATA");
+		child.add(MarkerFactory.getDetachedMarker("STORYBOARD"));
+		parent.add(child);
+
+		assertThat(filter.decide(newEvent(parent)), is(FilterReply.ACCEPT));
+		assertThat(filter.decide(newEvent(child)), is(FilterReply.ACCEPT));
+		assertThat(filter.decide(newEvent(MarkerFactory.getDetachedMarker("OTHER"))), is(FilterReply.DENY));
+		assertThat(filter.decide(newEvent(null)), is(FilterReply.DENY));
+	}
+
+	@Test
+	public void matchesWellKnownMarkers() {
+		assertThat(filter.decide(newEvent(ReportLoggerMarkers.STEP_MARKER)), is(FilterReply.ACCEPT));
+		assertThat(filter.decide(newEvent(ReportLoggerMarkers.PROGRESS_MARKER)), is(FilterReply.DENY));
+	}
+
+	@Test
+	public void markersAddedAfterStartAreUsed() {
+		filter.setMarker("OTHER");
+
+		assertThat(filter.decide(newEvent(MarkerFactory.getDetachedMarker("OTHER"))), is(FilterReply.ACCEPT));
+	}
+
+	@Test
+	public void filtersWithoutBeingStarted() {
+		MarkerFilter unstarted = new MarkerFilter();
+		unstarted.setMarker("STORYBOARD");
+		unstarted.setOnMatch(FilterReply.ACCEPT);
+		unstarted.setOnMismatch(FilterReply.DENY);
+
+		assertThat(unstarted.decide(newEvent(MarkerFactory.getDetachedMarker("STORYBOARD"))), is(FilterReply.ACCEPT));
+		assertThat(unstarted.decide(newEvent(MarkerFactory.getDetachedMarker("OTHER"))), is(FilterReply.DENY));
+	}
+
+	@Test
+	public void deniesEventsFromOtherThreads() throws InterruptedException {
+		filter.setFilterThread(Thread.currentThread());
+
+		final LoggingEvent event = newEvent(ReportLoggerMarkers.STEP_MARKER);
+		final AtomicReference<FilterReply> otherThreadReply = new AtomicReference<FilterReply>();
+
+		Thread other = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				otherThreadReply.set(filter.decide(event));
+			}
+		}, Thread.currentThread().getName());
+
+		other.start();
+		other.join();
+
+		assertThat(filter.decide(event), is(FilterReply.ACCEPT));
+		assertThat(otherThreadReply.get(), is(FilterReply.DENY));
+	}
+
+	private LoggingEvent newEvent(Marker marker) {
+		LoggingEvent event = new LoggingEvent(MarkerFilterTest.class.getName(), context.getLogger(MarkerFilterTest.class), Level.INFO, "message", null, null);
+		event.setMarker(marker);
+		return event;
+	}
+}
@@ -0,0 +1,70 @@
+package org.concordion.logback.html;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class HTMLEncoderTest {
+	private LoggerContext context;
+	private Logger logger;
+	private HTMLLayout layout;
+	private HTMLEncoder encoder;
+
+	@Before
+	public void setUp() {
+		context = new LoggerContext();
+		logger = context.getLogger(HTMLEncoderTest.class);
+
+		layout = new HTMLLayout();
+		layout.setContext(context);
+		layout.start();
+
+		encoder = new HTMLEncoder();
+		encoder.setContext(context);
+		encoder.setLayout(layout);
+		encoder.start();
+	}
+
+	@Test
+	public void encodesRowAsUtf8() {
+		String message = "caf\u00e9 \u20ac \ud83d\ude00 <tag>";
+
+		byte[] encoded = encoder.encode(newEvent(message));
+		String decoded = new String(encoded, StandardCharsets.UTF_8);
+
+		assertThat(decoded, containsString("caf\u00e9 \u20ac \ud83d\ude00 &lt;tag&gt;"));
+	}
+
+	@Test
+	public void encodesUnpairedSurrogateAsString() {
+		byte[] encoded = encoder.encode(newEvent("\ud83d\ude00 \ud83d x"));
+		String decoded = new String(encoded, StandardCharsets.UTF_8);
+
+		assertThat(decoded, containsString("\ud83d\ude00 ? x"));
+		// Nothing left over from sizing the array
+		assertThat(decoded, endsWith("</tr>"));
+		assertThat(decoded.getBytes(StandardCharsets.UTF_8), is(encoded));
+	}
+
+	@Test
+	public void headerContainsFileAndPresentationHeaders() {
+		String header = new String(encoder.headerBytes(), StandardCharsets.UTF_8);
+
+		assertThat(header, startsWith("<!DOCTYPE html"));
+		assertThat(header, containsString("charset=UTF-8"));
+		assertThat(header, containsString("<thead>"));
+	}
+
+	private LoggingEvent newEvent(String message) {
+		return new LoggingEvent(HTMLEncoderTest.class.getName(), logger, Level.INFO, message, null, null);
+	}
+}
@@ -0,0 +1,66 @@
+package org.concordion.logback.html;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.concordion.slf4j.markers.HtmlMessageMarker;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class HTMLLayoutTest {
+	private LoggerContext context;
+	private Logger logger;
+	private HTMLLayout layout;
+
+	@Before
+	public void setUp() {
+		context = new LoggerContext();
+		logger = context.getLogger(HTMLLayoutTest.class);
+
+		layout = new HTMLLayout();
+		layout.setContext(context);
+		layout.setPattern("%level%message%date{HH:mm:ss.SSS}%logger{30}");
+		layout.start();
+	}
+
+	@Test
+	public void rendersCellPerConverter() {
+		String row = layout.doLayout(newEvent(Level.WARN, "Hello <b>{}</b>", "world"));
+
+		assertThat(row, containsString("<tr class=\"record warn\">"));
+		assertThat(row, containsString("<td class=\"Level warn\">WARN</td>"));
+		assertThat(row, containsString("<td class=\"Message\">Hello &lt;b&gt;world&lt;/b&gt;</td>"));
+		assertThat(row, containsString("<td class=\"Time\">"));
+		assertThat(row, containsString("<td class=\"Logger\">"));
+	}
+
+	@Test
+	public void rendersRowsIndependently() {
+		String first = layout.doLayout(newEvent(Level.INFO, "first"));
+		String second = layout.doLayout(newEvent(Level.INFO, "second"));
+
+		assertThat(first, containsString("first"));
+		assertThat(first, not(containsString("second")));
+		assertThat(second, not(containsString("first")));
+	}
+
+	@Test
+	public void rendersHtmlMessageWithoutModifyingEvent() {
+		LoggingEvent event = newEvent(Level.INFO, "Plain {}", "message");
+		event.setMarker(new HtmlMessageMarker("<b>{}</b>", "message"));
+
+		String row = layout.doLayout(event);
+
+		assertThat(row, containsString("<td class=\"Message\"><b>message</b></td>"));
+		assertThat(event.getFormattedMessage(), is("Plain message"));
+	}
+
+	private LoggingEvent newEvent(Level level, String format, Object... arguments) {
+		return new LoggingEvent(HTMLLayoutTest.class.getName(), logger, level, format, null, arguments);
+	}
+}
@@ -0,0 +1,51 @@
+package org.concordion.logback.html;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class TransformTextTest {
+
+	@Test
+	public void escapesTagsTabsAndNewLinesInOnePass() {
+		StringBuilder buf = new StringBuilder("<td>");
+
+		TransformText.appendEscapedText(buf, "a < b & \"c\"\r\n\td");
+
+		assertThat(buf.toString(), is("<td>a &lt; b &amp; &quot;c&quot;\r<br />&nbsp;&nbsp;&nbsp;&nbsp;d"));
+	}
+
+	@Test
+	public void escapeTagsLeavesWhitespace() {
+		StringBuilder buf = new StringBuilder();
+
+		TransformText.appendEscapedTags(buf, "<a>\n\t</a>");
+
+		assertThat(buf.toString(), is("&lt;a&gt;\n\t&lt;/a&gt;"));
+	}
+
+	@Test
+	public void escapeLinesLeavesTabs() {
+		StringBuilder buf = new StringBuilder();
+
+		TransformText.appendEscapedLines(buf, "line 1\r\nline 2\n\tline 3");
+
+		assertThat(buf.toString(), is("line 1\r<br />line 2<br />\tline 3"));
+	}
+
+	@Test
+	public void nullIsAppendedAsNull() {
+		StringBuilder buf = new StringBuilder();
+
+		TransformText.appendEscapedTags(buf, null);
+
+		assertThat(buf.toString(), is("null"));
+	}
+
+	@Test
+	public void unchangedTextIsCopiedAsIs() {
+		assertThat(TransformText.escapeTags("plain text"), is("plain text"));
+		assertThat(TransformText.escapeText("plain text"), is("plain text"));
+	}
+}
@@ -0,0 +1,73 @@
+package org.concordion.slf4j.ext;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.concordion.logback.LogbackAdaptor;
+import org.concordion.slf4j.ILoggingAdaptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+public class LoggingContextTest {
+	private static final String TEST_NAME = "build/spec[example]";
+
+	private final ILoggingAdaptor adaptor = new LogbackAdaptor();
+	private ExecutorService pool;
+
+	@Before
+	public void setUp() {
+		pool = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+		MDC.clear();
+		FluentLogger.removeLoggingAdaptor();
+	}
+
+	@Test
+	public void tasksRunInTheCapturedContext() throws Exception {
+		MDC.put(LogbackAdaptor.TEST_NAME, TEST_NAME);
+		FluentLogger.addLoggingAdaptor(adaptor);
+
+		ExecutorService executor = FluentLogger.captureContext().wrap(pool);
+
+		assertThat(executor.submit(new ContextReader()).get(), is(TEST_NAME + "|true"));
+
+		// The worker thread's own context is restored once the task completes
+		assertThat(pool.submit(new ContextReader()).get(), is("null|false"));
+	}
+
+	@Test
+	public void completableFutureStagesRunInTheCapturedContext() throws Exception {
+		MDC.put(LogbackAdaptor.TEST_NAME, TEST_NAME);
+		FluentLogger.addLoggingAdaptor(adaptor);
+
+		LoggingContext context = FluentLogger.captureContext();
+
+		String result = CompletableFuture.supplyAsync(context.wrapSupplier(new Supplier<String>() {
+			@Override
+			public String get() {
+				return MDC.get(LogbackAdaptor.TEST_NAME);
+			}
+		}), pool).get();
+
+		assertThat(result, is(TEST_NAME));
+	}
+
+	private static class ContextReader implements Callable<String> {
+		@Override
+		public String call() {
+			return MDC.get(LogbackAdaptor.TEST_NAME) + "|" + (FluentLogger.getLoggingAdaptor() != null);
+		}
+	}
+}
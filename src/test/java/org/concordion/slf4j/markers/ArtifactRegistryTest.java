@@ -0,0 +1,75 @@
+package org.concordion.slf4j.markers;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ArtifactRegistryTest {
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void releaseWaitsForPendingFiles() {
+		String logFile = "build/registry/pendingLog.html";
+		Future<?> task = executor.submit(sleep(200));
+
+		ArtifactRegistry.addPending(logFile, task);
+		ArtifactRegistry.release(logFile);
+
+		assertThat(task.isDone(), is(true));
+	}
+
+	@Test
+	public void filesQueuedAfterReleaseAreWaitedOnInPlace() {
+		String logFile = "build/registry/lateLog.html";
+		assertThat(ArtifactRegistry.nextFileNumber(logFile), is(0));
+
+		ArtifactRegistry.release(logFile);
+
+		Future<?> task = executor.submit(sleep(200));
+		ArtifactRegistry.addPending(logFile, task);
+
+		assertThat(task.isDone(), is(true));
+		assertThat(ArtifactRegistry.nextFileNumber(logFile), is(1));
+	}
+
+	@Test
+	public void filesQueuedAfterReopenAreNotWaitedOn() {
+		String logFile = "build/registry/reopenedLog.html";
+		assertThat(ArtifactRegistry.nextFileNumber(logFile), is(0));
+
+		ArtifactRegistry.release(logFile);
+		ArtifactRegistry.reopen(logFile);
+
+		Future<?> task = executor.submit(sleep(200));
+		ArtifactRegistry.addPending(logFile, task);
+
+		assertThat(task.isDone(), is(false));
+		assertThat(ArtifactRegistry.nextFileNumber(logFile), is(1));
+
+		ArtifactRegistry.release(logFile);
+
+		assertThat(task.isDone(), is(true));
+	}
+
+	private Callable<Void> sleep(final long milliseconds) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Thread.sleep(milliseconds);
+				return null;
+			}
+		};
+	}
+}
@@ -0,0 +1,116 @@
+package org.concordion.slf4j.markers;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.concordion.ext.AttachmentWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AttachmentMarkerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void fileIsCopiedAndPreviewedFromTheCopy() throws Exception {
+		Path source = write("source.json", "{\"name\": \"value\"}");
+		String logFile = new File(folder.getRoot(), "copyLog.html").getPath();
+
+		AttachmentMarker marker = new AttachmentMarker(logFile, source, "data.json", "application/json", false);
+		marker.prepare();
+
+		File copy = new File(folder.getRoot(), marker.getFile());
+
+		assertThat(new String(Files.readAllBytes(copy.toPath()), StandardCharsets.UTF_8), is("{\"name\": \"value\"}"));
+		assertThat(marker.getFormattedData(), containsString("<xmp class=\"fadeout\">{\"name\": \"value\"}</xmp>"));
+	}
+
+	@Test
+	public void leftOverFileIsReplacedRatherThanWrittenThrough() throws Exception {
+		Path source = write("source.txt", "original");
+		String logFile = new File(folder.getRoot(), "linkLog.html").getPath();
+
+		// Hard link attached by a previous run, which numbered its files from the beginning too
+		Files.createLink(new File(folder.getRoot(), "linkLog0-data.txt").toPath(), source);
+
+		AttachmentMarker replacement = new AttachmentMarker(logFile, new ByteArrayInputStream("replacement".getBytes(StandardCharsets.UTF_8)), "data.txt", "text/plain");
+		replacement.prepare();
+
+		assertThat(replacement.getFile(), is("linkLog0-data.txt"));
+		assertThat(new String(Files.readAllBytes(source), StandardCharsets.UTF_8), is("original"));
+	}
+
+	@Test
+	public void numberingContinuesWhenTheLogFileIsReused() throws Exception {
+		String logFile = new File(folder.getRoot(), "reusedLog.html").getPath();
+
+		AttachmentMarker first = new AttachmentMarker(logFile, new ByteArrayInputStream("first".getBytes(StandardCharsets.UTF_8)), "data.txt", "text/plain");
+		first.prepare();
+
+		// Test finishes and runs again in the same JVM, appending to the same log file
+		ArtifactRegistry.release(logFile);
+
+		AttachmentMarker second = new AttachmentMarker(logFile, new ByteArrayInputStream("second".getBytes(StandardCharsets.UTF_8)), "data.txt", "text/plain");
+		second.prepare();
+
+		assertThat(second.getFile(), is(not(first.getFile())));
+		assertThat(new String(Files.readAllBytes(new File(folder.getRoot(), first.getFile()).toPath()), StandardCharsets.UTF_8), is("first"));
+	}
+
+	@Test
+	public void writerStreamsContentIntoTheAttachment() throws Exception {
+		String logFile = new File(folder.getRoot(), "writerLog.html").getPath();
+
+		AttachmentMarker marker = new AttachmentMarker(logFile, new AttachmentWriter() {
+			@Override
+			public void writeTo(OutputStream outputStream) throws IOException {
+				for (int i = 0; i < 3; i++) {
+					outputStream.write(("row " + i + "\n").getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}, "rows.csv", "text/csv");
+		marker.prepare();
+
+		assertThat(marker.getFormattedData(), containsString("row 0\nrow 1\nrow 2\n</xmp>"));
+	}
+
+	@Test
+	public void streamIsClosedOnceWrittenOrWhenNeverWritten() throws Exception {
+		String logFile = new File(folder.getRoot(), "streamLog.html").getPath();
+
+		ClosingStream written = new ClosingStream("written");
+		new AttachmentMarker(logFile, written, "written.txt", "text/plain").prepare();
+
+		ClosingStream unwritten = new ClosingStream("unwritten");
+		new AttachmentMarker(logFile, unwritten, "unwritten.txt", "text/plain").closeUnwritten();
+
+		assertThat(written.closed, is(true));
+		assertThat(unwritten.closed, is(true));
+	}
+
+	private Path write(String name, String content) throws Exception {
+		return Files.write(new File(folder.getRoot(), name).toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static class ClosingStream extends ByteArrayInputStream {
+		boolean closed = false;
+
+		ClosingStream(String content) {
+			super(content.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package org.concordion.slf4j.markers;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		ContentStore.setEnabled(true);
+	}
+
+	@After
+	public void tearDown() {
+		ContentStore.setEnabled(false);
+	}
+
+	@Test
+	public void identicalContentIsStoredOnce() throws Exception {
+		String logFile = new File(folder.newFolder("spec"), "specLog.html").getPath();
+
+		AttachmentMarker first = newAttachment(logFile, "{\"id\": 1}");
+		AttachmentMarker second = newAttachment(logFile, "{\"id\": 1}");
+		AttachmentMarker other = newAttachment(logFile, "{\"id\": 2}");
+
+		assertThat(first.getFile(), startsWith(ContentStore.FOLDER_NAME + "/"));
+		assertThat(first.getFile(), endsWith(".json"));
+		assertThat(second.getFile(), is(first.getFile()));
+		assertThat(other.getFile(), is(not(first.getFile())));
+
+		// Only the stored content, no left over temporary files
+		assertThat(new File(folder.getRoot(), "spec/" + ContentStore.FOLDER_NAME).list().length, is(2));
+		assertThat(second.getFormattedData(), containsString("{\"id\": 1}"));
+	}
+
+	private AttachmentMarker newAttachment(String logFile, String content) throws Exception {
+		AttachmentMarker marker = new AttachmentMarker(logFile, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), "data.json", "application/json");
+		marker.prepare();
+
+		return marker;
+	}
+}
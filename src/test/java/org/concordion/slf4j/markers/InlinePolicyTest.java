@@ -0,0 +1,75 @@
+package org.concordion.slf4j.markers;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InlinePolicyTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void smallDataIsInlined() throws Exception {
+		DataMarker marker = new DataMarker("line 1\nline 2\n");
+
+		assertThat(marker.getFormattedData(newPolicy("smallLog.html")), is(marker.getFormattedData()));
+	}
+
+	@Test
+	public void largeDataIsPreviewedAndWrittenToAFileOfItsOwn() throws Exception {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			data.append("line ").append(i).append('\n');
+		}
+
+		DataMarker marker = new DataMarker(data.toString());
+		String formatted = marker.getFormattedData(newPolicy("largeLog.html"));
+
+		assertThat(formatted, containsString("<a href=\"largeLog0-data.txt\""));
+		assertThat(formatted, containsString("<xmp class=\"fadeout\">line 0\nline 1\nline 2\n</xmp>"));
+		assertThat(new String(Files.readAllBytes(new File(folder.getRoot(), "largeLog0-data.txt").toPath()), StandardCharsets.UTF_8), is(data.toString()));
+
+		// Rendering again links to the same file
+		assertThat(marker.getFormattedData(newPolicy("largeLog.html")), is(formatted));
+	}
+
+	@Test
+	public void logFileIsOnlyLookedUpForLargeData() throws Exception {
+		InlinePolicy policy = new InlinePolicy(50, 3, 1024, new Supplier<String>() {
+			@Override
+			public String get() {
+				throw new AssertionError("Log file looked up for small data");
+			}
+		});
+
+		new DataMarker("small").getFormattedData(policy);
+	}
+
+	@Test
+	public void nullDataIsRenderedAsNull() throws Exception {
+		DataMarker marker = new DataMarker(null);
+
+		assertThat(marker.getFormattedData(newPolicy("nullLog.html")), is("<xmp>null</xmp>"));
+	}
+
+	@Test
+	public void previewIsLimitedBySize() throws Exception {
+		InlinePolicy policy = new InlinePolicy(10, 3, 8, (String) null);
+
+		assertThat(policy.previewLength("0123456789abcdef"), is(8));
+		assertThat(policy.previewLength("a\nb\nc\nd\n"), is(6));
+		assertThat(policy.canSpill(), is(false));
+	}
+
+	private InlinePolicy newPolicy(String logFile) {
+		return new InlinePolicy(50, 3, 1024, new File(folder.getRoot(), logFile).getPath());
+	}
+}
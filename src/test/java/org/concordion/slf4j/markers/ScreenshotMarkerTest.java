@@ -0,0 +1,243 @@
+package org.concordion.slf4j.markers;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.concordion.ext.RawScreenshot;
+import org.concordion.ext.RawScreenshotTaker;
+import org.concordion.ext.ScreenshotTaker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import ch.qos.logback.core.Context;
+import ch.qos.logback.core.status.Status;
+
+public class ScreenshotMarkerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		ScreenshotMarker.setSkipUnchanged(true);
+	}
+
+	@After
+	public void tearDown() {
+		ScreenshotMarker.setSkipUnchanged(false);
+	}
+
+	@Test
+	public void unchangedScreenshotsReferToThePreviousFile() throws Exception {
+		String logFile = new File(folder.getRoot(), "specLog.html").getPath();
+
+		String first = takeScreenshot(logFile, "screen one");
+		String second = takeScreenshot(logFile, "screen one");
+		String third = takeScreenshot(logFile, "screen two");
+		String fourth = takeScreenshot(logFile, "screen one");
+
+		assertThat(first, is("specLogScreenShot0.png"));
+		assertThat(second, is(first));
+		assertThat(third, is("specLogScreenShot1.png"));
+		assertThat(fourth, is("specLogScreenShot2.png"));
+		assertThat(folder.getRoot().list().length, is(3));
+	}
+
+	@Test
+	public void identicalScreenshotsFromManyThreadsAreWrittenOnce() throws Exception {
+		final String logFile = new File(folder.getRoot(), "threadsLog.html").getPath();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<String>> files = new ArrayList<Future<String>>();
+
+		try {
+			for (int i = 0; i < 8; i++) {
+				files.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						start.await();
+						return takeScreenshot(logFile, "same screen");
+					}
+				}));
+			}
+
+			start.countDown();
+
+			for (Future<String> file : files) {
+				assertThat(file.get(), is("threadsLogScreenShot0.png"));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(folder.getRoot().list().length, is(1));
+	}
+
+	@Test
+	public void slowScreenshotsTimeOut() throws Exception {
+		String logFile = new File(folder.getRoot(), "slowLog.html").getPath();
+		long timedOut = ScreenshotMarker.getTimedOutCaptureCount();
+
+		ScreenshotMarker.setCaptureTimeout(100);
+		try {
+			ScreenshotMarker marker = new ScreenshotMarker(logFile, new FixedScreenshotTaker("slow") {
+				@Override
+				public Dimension writeScreenshotTo(OutputStream outputStream) throws IOException {
+					try {
+						Thread.sleep(5000);
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					return super.writeScreenshotTo(outputStream);
+				}
+			});
+			marker.prepare();
+
+			assertThat(marker.hasData(), is(true));
+			assertThat(marker.getFormattedData(), is("screenshot timed out after 100 ms"));
+			assertThat(ScreenshotMarker.getTimedOutCaptureCount(), is(timedOut + 1));
+			assertThat(folder.getRoot().list().length, is(0));
+		} finally {
+			ScreenshotMarker.setCaptureTimeout(0);
+		}
+	}
+
+	@Test
+	public void rawScreenshotsAreWrittenInTheBackground() throws Exception {
+		String logFile = new File(folder.getRoot(), "rawLog.html").getPath();
+
+		ScreenshotMarker.setSkipUnchanged(false);
+
+		ScreenshotMarker marker = new ScreenshotMarker(logFile, new RawScreenshotTaker() {
+			@Override
+			public RawScreenshot takeRawScreenshot() {
+				return RawScreenshot.fromImage(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB));
+			}
+
+			@Override
+			public String getFileExtension() {
+				return "png";
+			}
+		});
+		marker.prepare();
+
+		// File name and size are known before the screenshot has been written
+		assertThat(marker.getFile(), is("rawLogScreenShot0.png"));
+		assertThat(marker.getImageSize(), is(new Dimension(40, 30)));
+
+		ArtifactRegistry.release(logFile);
+
+		BufferedImage written = ImageIO.read(new File(folder.getRoot(), marker.getFile()));
+		assertThat(written.getWidth(), is(40));
+		assertThat(written.getHeight(), is(30));
+	}
+
+	@Test
+	public void failureToWriteARawScreenshotIsReported() throws Exception {
+		// Folder doesn't exist so the screenshot can't be written
+		File screenshot = new File(folder.getRoot(), "missing/failLogScreenShot0.png");
+		String logFile = new File(folder.getRoot(), "missing/failLog.html").getPath();
+
+		ScreenshotMarker.setSkipUnchanged(false);
+
+		ScreenshotMarker marker = new ScreenshotMarker(logFile, new RawScreenshotTaker() {
+			@Override
+			public RawScreenshot takeRawScreenshot() {
+				return RawScreenshot.fromImage(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB));
+			}
+
+			@Override
+			public String getFileExtension() {
+				return "png";
+			}
+		});
+		marker.prepare();
+
+		ArtifactRegistry.release(logFile);
+
+		// The marker has already been prepared, the log relies on the image's alternate text
+		assertThat(marker.getUnavailableReason(), is(nullValue()));
+		assertThat(marker.getFormattedData(), containsString("alt=\"screenshot could not be loaded\""));
+
+		boolean reported = false;
+
+		for (Status status : ((Context) LoggerFactory.getILoggerFactory()).getStatusManager().getCopyOfStatusList()) {
+			if (status.getLevel() == Status.ERROR && status.getMessage().equals("Unable to write screenshot " + screenshot.getPath())) {
+				reported = true;
+			}
+		}
+
+		assertThat(reported, is(true));
+	}
+
+	@Test
+	public void timedScreenshotsAreTakenInTheTestsLoggingContext() throws Exception {
+		String logFile = new File(folder.getRoot(), "contextLog.html").getPath();
+		final String[] testName = new String[1];
+
+		ScreenshotMarker.setSkipUnchanged(false);
+		ScreenshotMarker.setCaptureTimeout(5000);
+		MDC.put("testname", "contextTest");
+		try {
+			new ScreenshotMarker(logFile, new FixedScreenshotTaker("context") {
+				@Override
+				public Dimension writeScreenshotTo(OutputStream outputStream) throws IOException {
+					testName[0] = MDC.get("testname");
+					return super.writeScreenshotTo(outputStream);
+				}
+			}).prepare();
+		} finally {
+			MDC.remove("testname");
+			ScreenshotMarker.setCaptureTimeout(0);
+		}
+
+		assertThat(testName[0], is("contextTest"));
+	}
+
+	private String takeScreenshot(String logFile, String content) throws Exception {
+		ScreenshotMarker marker = new ScreenshotMarker(logFile, new FixedScreenshotTaker(content));
+		marker.prepare();
+
+		assertThat(marker.getImageSize(), is(new Dimension(10, 10)));
+
+		return marker.getFile();
+	}
+
+	private static class FixedScreenshotTaker implements ScreenshotTaker {
+		private final String content;
+
+		FixedScreenshotTaker(String content) {
+			this.content = content;
+		}
+
+		@Override
+		public Dimension writeScreenshotTo(OutputStream outputStream) throws IOException {
+			outputStream.write(content.getBytes("UTF-8"));
+			return new Dimension(10, 10);
+		}
+
+		@Override
+		public String getFileExtension() {
+			return "png";
+		}
+	}
+}
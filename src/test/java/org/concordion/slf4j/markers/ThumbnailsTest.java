@@ -0,0 +1,54 @@
+package org.concordion.slf4j.markers;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ThumbnailsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void largeImagesAreDownscaledInTheBackground() throws Exception {
+		String logFile = new File(folder.getRoot(), "specLog.html").getPath();
+		File image = newImage("specLogScreenShot0.png", 1600, 1000);
+
+		assertThat(Thumbnails.submit(logFile, image, new Dimension(1600, 1000)), is(true));
+
+		// Waits for the thumbnail
+		ArtifactRegistry.release(logFile);
+
+		BufferedImage thumbnail = ImageIO.read(new File(folder.getRoot(), "specLogScreenShot0" + Thumbnails.SUFFIX));
+		assertThat(thumbnail.getWidth(), is(800));
+		assertThat(thumbnail.getHeight(), is(500));
+	}
+
+	@Test
+	public void smallImagesAreLeftAlone() throws Exception {
+		String logFile = new File(folder.getRoot(), "specLog.html").getPath();
+		File image = newImage("specLogScreenShot1.png", 400, 300);
+
+		assertThat(Thumbnails.submit(logFile, image, new Dimension(400, 300)), is(false));
+	}
+
+	@Test
+	public void thumbnailIsNamedAfterTheImage() {
+		assertThat(Thumbnails.getThumbnailPath("../artifacts/abc.png"), is("../artifacts/abc" + Thumbnails.SUFFIX));
+		assertThat(Thumbnails.getThumbnailPath("spec.v1/image"), is("spec.v1/image" + Thumbnails.SUFFIX));
+	}
+
+	private File newImage(String name, int width, int height) throws Exception {
+		File file = new File(folder.getRoot(), name);
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", file);
+		return file;
+	}
+}
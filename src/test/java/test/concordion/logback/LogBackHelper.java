@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.URL;
 
+import org.concordion.logback.html.HTMLEncoder;
 import org.concordion.logback.html.HTMLLayout;
 import org.slf4j.LoggerFactory;
 
@@ -61,14 +62,18 @@ public class LogBackHelper {
 	private static <T> T getLayout(String appenderName, Class<T> expectedClass) {
 		FileAppender<?> fileAppender = getFileAppender(getSiftingAppender(appenderName));
 
-		if (fileAppender.getEncoder() instanceof LayoutWrappingEncoder<?> == false) {
+		Layout<?> layout;
+
+		if (fileAppender.getEncoder() instanceof LayoutWrappingEncoder<?>) {
+			layout = ((LayoutWrappingEncoder<?>) fileAppender.getEncoder()).getLayout();
+		} else if (fileAppender.getEncoder() instanceof HTMLEncoder) {
+			layout = ((HTMLEncoder) fileAppender.getEncoder()).getLayout();
+		} else {
 			throw new IllegalStateException(appenderName + " encoder is not configured");
 		}
 
-		LayoutWrappingEncoder<?> encoder = (LayoutWrappingEncoder<?>) fileAppender.getEncoder();
-
-		if (encoder.getLayout().getClass() == expectedClass) {
-			return (T) encoder.getLayout();
+		if (layout.getClass() == expectedClass) {
+			return (T) layout;
 		}
 
 		throw new IllegalStateException(appenderName + " layout is not configured");		